@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.display.projector;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.TypeIdentity;
+import net.imglib2.img.cell.AbstractCellImg;
+
+/**
+ * Multithreaded version of {@link IterableIntervalProjector2D}, that runs on
+ * a {@link ForkJoinPool}.
+ * <p>
+ * The target is divided into bands of rows. The height of a band is chosen,
+ * such that a band fits into the cache, and it's aligned to the cell grid, if
+ * there is an {@link AbstractCellImg} behind the source (see
+ * {@link NativeImgView#unwrapConverted}). Bands are processed by recursive
+ * tasks, that are balanced by work stealing. Each band uses its own
+ * {@link RandomAccess} into the source. Exceptions thrown by the converter
+ * are propagated to the caller of {@link #map()}.
+ * <p>
+ * Small planes, and targets that are not a {@link RandomAccessibleInterval},
+ * are projected single threaded.
+ *
+ * @param <A>
+ *            pixel type of the input
+ * @param <B>
+ *            pixel type of the output
+ */
+public class ForkJoinIterableIntervalProjector2D< A, B > extends IterableIntervalProjector2D< A, B >
+{
+
+	/**
+	 * Planes with less pixels are projected single threaded.
+	 */
+	private static final long MIN_PARALLEL_SIZE = 64 * 1024;
+
+	/**
+	 * Number of pixels per band, such that the pixels of a band fit into
+	 * the L2 cache.
+	 */
+	private static final long PIXELS_PER_BAND = 16 * 1024;
+
+	private final int dimX;
+
+	private final int dimY;
+
+	private final ForkJoinPool pool;
+
+	private final int cellHeight;
+
+	/** Bands start at rows, that are congruent to this modulo the band height. */
+	private final long cellOffset;
+
+	public ForkJoinIterableIntervalProjector2D( final int dimX, final int dimY, final RandomAccessible< A > source,
+			final IterableInterval< B > target, final Converter< ? super A, B > converter, final ForkJoinPool pool )
+	{
+		this( dimX, dimY, source, target, converter, pool, cellHeight( source, dimY ) );
+	}
+
+	/**
+	 * @param cellHeight
+	 *            Height of the cells of the source, bands are aligned to
+	 *            multiples of this height. Use 1, if the source is not
+	 *            stored in cells.
+	 */
+	public ForkJoinIterableIntervalProjector2D( final int dimX, final int dimY, final RandomAccessible< A > source,
+			final IterableInterval< B > target, final Converter< ? super A, B > converter, final ForkJoinPool pool,
+			final int cellHeight )
+	{
+		super( dimX, dimY, source, target, converter );
+		this.dimX = dimX;
+		this.dimY = dimY;
+		this.pool = pool;
+		this.cellHeight = Math.max( 1, cellHeight );
+		this.cellOffset = cellOffset( source, dimY, this.cellHeight );
+	}
+
+	/**
+	 * Returns the height of the cells of the {@link AbstractCellImg} behind
+	 * the source, or 1 if there is none, or if dimension dimY of the source
+	 * isn't aligned to a dimension of the image.
+	 */
+	static int cellHeight( final RandomAccessible< ? > source, final int dimY )
+	{
+		final NativeImgView view = NativeImgView.unwrapConverted( source );
+		final int d = view == null ? -1 : alignedDimension( view, dimY );
+		if ( d < 0 || !( view.getImg() instanceof AbstractCellImg ) )
+			return 1;
+		return ( ( AbstractCellImg< ?, ?, ?, ? > ) view.getImg() ).getCellGrid().cellDimension( d );
+	}
+
+	/**
+	 * Returns the row of the source, modulo the cell height, where a cell of
+	 * the image behind the source starts.
+	 */
+	private static long cellOffset( final RandomAccessible< ? > source, final int dimY, final int cellHeight )
+	{
+		final NativeImgView view = NativeImgView.unwrapConverted( source );
+		final int d = view == null ? -1 : alignedDimension( view, dimY );
+		if ( d < 0 )
+			return 0;
+		final long[] imgPosition = new long[ view.getImg().numDimensions() ];
+		view.toImg( new long[ source.numDimensions() ], imgPosition );
+		return Math.floorMod( -imgPosition[ d ], ( long ) cellHeight );
+	}
+
+	private static int alignedDimension( final NativeImgView view, final int dimY )
+	{
+		for ( int d = 0; d < view.getImg().numDimensions(); d++ )
+			if ( view.isAligned( dimY, d ) )
+				return d;
+		return -1;
+	}
+
+	@Override
+	public void map()
+	{
+		if ( converter instanceof TypeIdentity && PrimitiveRowCopy.copy( source, position, dimX, dimY, target ) )
+			return;
+		if ( !( target instanceof RandomAccessibleInterval ) || target.size() < MIN_PARALLEL_SIZE || pool.getParallelism() < 2 )
+		{
+			super.map();
+			return;
+		}
+		final long width = target.dimension( 0 );
+		final long rows = Math.max( 1, PIXELS_PER_BAND / width );
+		final long rowsPerBand = ( rows + cellHeight - 1 ) / cellHeight * cellHeight;
+		pool.invoke( new Bands( target.min( 1 ), target.max( 1 ) + 1, rowsPerBand ) );
+	}
+
+	/**
+	 * Projects the rows from minY (inclusive) to maxY (exclusive).
+	 */
+	private void mapRows( final long minY, final long maxY )
+	{
+		@SuppressWarnings( "unchecked" )
+		final RandomAccess< B > targetRandomAccess = ( ( RandomAccessibleInterval< B > ) target ).randomAccess();
+		final RandomAccess< A > sourceRandomAccess = source.randomAccess();
+		sourceRandomAccess.setPosition( position );
+		final long minX = target.min( 0 );
+		final long width = target.dimension( 0 );
+		for ( long y = minY; y < maxY; y++ )
+		{
+			sourceRandomAccess.setPosition( minX, dimX );
+			sourceRandomAccess.setPosition( y, dimY );
+			targetRandomAccess.setPosition( minX, 0 );
+			targetRandomAccess.setPosition( y, 1 );
+			for ( long x = 0; x < width; x++ )
+			{
+				converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
+				sourceRandomAccess.fwd( dimX );
+				targetRandomAccess.fwd( 0 );
+			}
+		}
+	}
+
+	/**
+	 * Splits the range of rows in halves, until it doesn't contain a band
+	 * boundary. Band boundaries are aligned to the cells of the source.
+	 */
+	private class Bands extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long minY;
+
+		private final long maxY;
+
+		private final long rowsPerBand;
+
+		private Bands( final long minY, final long maxY, final long rowsPerBand )
+		{
+			this.minY = minY;
+			this.maxY = maxY;
+			this.rowsPerBand = rowsPerBand;
+		}
+
+		@Override
+		protected void compute()
+		{
+			final long middle = ( minY + maxY ) / 2;
+			long split = middle - Math.floorMod( middle - cellOffset, rowsPerBand );
+			if ( split <= minY )
+				split += rowsPerBand;
+			if ( split >= maxY )
+			{
+				mapRows( minY, maxY );
+				return;
+			}
+			invokeAll( new Bands( minY, split, rowsPerBand ), new Bands( split, maxY, rowsPerBand ) );
+		}
+	}
+}
@@ -48,6 +48,7 @@ import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.converter.Converter;
+import net.imglib2.converter.TypeIdentity;
 import net.imglib2.view.RandomAccessibleIntervalCursor;
 import net.imglib2.view.Views;
 
@@ -60,7 +61,8 @@ import net.imglib2.view.Views;
  * 
  * The output
  * {@link IterableInterval} will be divided into approximately equally sized
- * portions that are filled by separate threads.
+ * portions that are filled by separate threads. Exceptions thrown by the
+ * threads are rethrown by {@link #map()}.
  *
  * @author David Hoerl
  *
@@ -100,6 +102,9 @@ public class MultithreadedIterableIntervalProjector2D<A, B> extends IterableInte
 	@Override
 	public void map()
 	{
+		if ( converter instanceof TypeIdentity && PrimitiveRowCopy.copy( source, position, dimX, dimY, target ) )
+			return;
+
 		// fix interval for all dimensions
 		for ( int d = 0; d < position.length; ++d )
 			min[d] = max[d] = position[d];
@@ -212,9 +217,21 @@ public class MultithreadedIterableIntervalProjector2D<A, B> extends IterableInte
 			for ( Future< Void > f : futures )
 				f.get();
 		}
-		catch ( InterruptedException | ExecutionException e )
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
 		{
-			e.printStackTrace();
+			// NB: Failures of the workers are rethrown, the target would be
+			// incomplete otherwise.
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
 		}
 
 	}
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.display.projector;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.AbstractConvertedRandomAccessible;
+import net.imglib2.converter.AbstractConvertedRandomAccessibleInterval;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.WrappedImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.transform.integer.MixedTransform;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.MixedTransformView;
+
+/**
+ * The {@link ArrayImg}, {@link PlanarImg} or {@link AbstractCellImg} behind a
+ * chain of {@link IntervalView}s, {@link MixedTransformView}s and
+ * {@link WrappedImg}s, together with the concatenated transformation from
+ * coordinates of the outermost view to coordinates of the image.
+ * <p>
+ * This allows to access the primitive arrays of the image directly, for
+ * example to copy rows with {@link System#arraycopy}.
+ */
+public final class NativeImgView
+{
+
+	/**
+	 * Returns the {@link NativeImgView} for the given view, or null if there
+	 * is no {@link ArrayImg}, {@link PlanarImg} or {@link AbstractCellImg}
+	 * behind it. Converted views are not unwrapped.
+	 */
+	public static NativeImgView unwrap( final RandomAccessible< ? > view )
+	{
+		return unwrap( view, false );
+	}
+
+	/**
+	 * Same as {@link #unwrap(RandomAccessible)}, but converted views are
+	 * unwrapped too. Converters don't change positions, so the transformation
+	 * is still valid, but the pixel values of the image differ from the
+	 * pixel values of the view.
+	 */
+	public static NativeImgView unwrapConverted( final RandomAccessible< ? > view )
+	{
+		return unwrap( view, true );
+	}
+
+	private static NativeImgView unwrap( final RandomAccessible< ? > view, final boolean converted )
+	{
+		Transform transform = new Transform( view.numDimensions() );
+		Object image = view;
+		while ( true )
+		{
+			if ( image instanceof IntervalView )
+				image = ( ( IntervalView< ? > ) image ).getSource();
+			else if ( image instanceof MixedTransformView )
+			{
+				final MixedTransformView< ? > mixedTransformView = ( MixedTransformView< ? > ) image;
+				transform = transform.concatenate( mixedTransformView.getTransformToSource() );
+				image = mixedTransformView.getSource();
+			}
+			else if ( image instanceof WrappedImg )
+				image = ( ( WrappedImg< ? > ) image ).getImg();
+			else if ( converted && image instanceof AbstractConvertedRandomAccessibleInterval )
+				image = ( ( AbstractConvertedRandomAccessibleInterval< ?, ? > ) image ).getSource();
+			else if ( converted && image instanceof AbstractConvertedRandomAccessible )
+				image = ( ( AbstractConvertedRandomAccessible< ?, ? > ) image ).getSource();
+			else
+				break;
+		}
+		if ( !( image instanceof ArrayImg || image instanceof PlanarImg || image instanceof AbstractCellImg ) )
+			return null;
+		final NativeImg< ?, ? > img = ( NativeImg< ?, ? > ) image;
+		if ( img.numDimensions() != transform.translation.length )
+			return null;
+		return new NativeImgView( img, transform );
+	}
+
+	private final NativeImg< ?, ? > img;
+
+	private final Transform transform;
+
+	private NativeImgView( final NativeImg< ?, ? > img, final Transform transform )
+	{
+		this.img = img;
+		this.transform = transform;
+	}
+
+	/** Returns the image behind the view. */
+	public NativeImg< ?, ? > getImg()
+	{
+		return img;
+	}
+
+	/**
+	 * Returns true if moving forward along the given dimension of the view,
+	 * moves forward along dimension imgDimension of the image, and doesn't
+	 * change the position in any other dimension of the image.
+	 */
+	public boolean isAligned( final int viewDimension, final int imgDimension )
+	{
+		for ( int d = 0; d < img.numDimensions(); d++ )
+		{
+			final boolean mapped = !transform.zero[ d ] && transform.mapping[ d ] == viewDimension;
+			if ( mapped != ( d == imgDimension ) )
+				return false;
+		}
+		return !transform.inversion[ imgDimension ];
+	}
+
+	/**
+	 * Transforms a position of the outermost view into a position of the
+	 * image.
+	 */
+	public void toImg( final long[] viewPosition, final long[] imgPosition )
+	{
+		transform.apply( viewPosition, imgPosition );
+	}
+
+	/**
+	 * Transforms a position of the image into a position of the outermost
+	 * view. Dimensions of the view, that don't correspond to a dimension of
+	 * the image, are left unchanged.
+	 */
+	public void toView( final long[] imgPosition, final long[] viewPosition )
+	{
+		transform.applyInverse( imgPosition, viewPosition );
+	}
+
+	/**
+	 * The concatenation of the {@link MixedTransform}s of nested
+	 * {@link MixedTransformView}s.
+	 */
+	private static class Transform
+	{
+		private final long[] translation;
+
+		private final boolean[] zero;
+
+		private final int[] mapping;
+
+		private final boolean[] inversion;
+
+		private Transform( final int n )
+		{
+			translation = new long[ n ];
+			zero = new boolean[ n ];
+			mapping = new int[ n ];
+			inversion = new boolean[ n ];
+			for ( int d = 0; d < n; d++ )
+				mapping[ d ] = d;
+		}
+
+		private Transform concatenate( final MixedTransform t )
+		{
+			final Transform result = new Transform( t.numTargetDimensions() );
+			for ( int d = 0; d < t.numTargetDimensions(); d++ )
+			{
+				if ( t.getComponentZero( d ) )
+				{
+					result.zero[ d ] = true;
+					result.translation[ d ] = t.getTranslation( d );
+					continue;
+				}
+				final int k = t.getComponentMapping( d );
+				final boolean inverted = t.getComponentInversion( d );
+				result.translation[ d ] = t.getTranslation( d ) + ( inverted ? -translation[ k ] : translation[ k ] );
+				result.zero[ d ] = zero[ k ];
+				result.mapping[ d ] = mapping[ k ];
+				result.inversion[ d ] = inversion[ k ] ^ inverted;
+			}
+			return result;
+		}
+
+		private void apply( final long[] source, final long[] target )
+		{
+			for ( int d = 0; d < translation.length; d++ )
+			{
+				if ( zero[ d ] )
+					target[ d ] = translation[ d ];
+				else
+				{
+					final long value = source[ mapping[ d ] ];
+					target[ d ] = translation[ d ] + ( inversion[ d ] ? -value : value );
+				}
+			}
+		}
+
+		private void applyInverse( final long[] target, final long[] source )
+		{
+			for ( int d = 0; d < translation.length; d++ )
+			{
+				if ( !zero[ d ] )
+				{
+					final long value = target[ d ] - translation[ d ];
+					source[ mapping[ d ] ] = inversion[ d ] ? -value : value;
+				}
+			}
+		}
+	}
+}
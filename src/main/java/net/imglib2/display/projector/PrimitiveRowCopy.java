@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.display.projector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.TypeIdentity;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.imageplus.ReadOnlyArrays;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Fraction;
+
+/**
+ * Fast path for 2D projectors with a {@link TypeIdentity} converter. Copies
+ * the rows of an {@link ArrayImg}, {@link PlanarImg} or
+ * {@link AbstractCellImg} source (possibly behind views, see
+ * {@link NativeImgView}) into an {@link ArrayImg} target of the same pixel
+ * type, using {@link System#arraycopy}. Rows of a cell image are copied in
+ * spans, one span per cell.
+ */
+public final class PrimitiveRowCopy
+{
+
+	private PrimitiveRowCopy()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Copies all rows of the target, see
+	 * {@link #copy(RandomAccessible, long[], int, int, IterableInterval, long, long)}.
+	 */
+	public static boolean copy( final RandomAccessible< ? > source, final long[] position, final int dimX, final int dimY, final IterableInterval< ? > target )
+	{
+		return copy( source, position, dimX, dimY, target, target.min( 1 ), target.max( 1 ) + 1 );
+	}
+
+	/**
+	 * Copies the rows minY (inclusive) to maxY (exclusive) of the given plane
+	 * of the source into the target. Pixel (x, y) of the target is set to
+	 * the pixel of the source at the given position, with the coordinates
+	 * dimX and dimY replaced by x and y.
+	 * <p>
+	 * Returns false, without copying anything, if the source and target are
+	 * not supported. All rows are checked, before the first is copied. In
+	 * this case the plane needs to be projected pixel by pixel.
+	 */
+	public static boolean copy( final RandomAccessible< ? > source, final long[] position, final int dimX, final int dimY, final IterableInterval< ? > target, final long minY, final long maxY )
+	{
+		if ( !( target instanceof ArrayImg ) || target.numDimensions() != 2 || minY >= maxY )
+			return false;
+		final NativeImgView view = NativeImgView.unwrap( source );
+		if ( view == null || !view.isAligned( dimX, 0 ) )
+			return false;
+		final NativeImg< ?, ? > img = view.getImg();
+		final ArrayImg< ?, ? > targetImg = ( ArrayImg< ?, ? > ) target;
+		if ( !haveSameStorage( img.getType(), targetImg.getType() ) )
+			return false;
+		final Object targetAccess = targetImg.update( null );
+		if ( !( targetAccess instanceof ArrayDataAccess ) )
+			return false;
+		final Object targetArray = ( ( ArrayDataAccess< ? > ) targetAccess ).getCurrentStorageArray();
+		final long[] viewPosition = position.clone();
+		final long[] imgPosition = new long[ img.numDimensions() ];
+		final int width = ( int ) target.dimension( 0 );
+		viewPosition[ dimX ] = target.min( 0 );
+		viewPosition[ dimY ] = minY;
+		if ( !contains( img, view, viewPosition, imgPosition, width ) )
+			return false;
+		viewPosition[ dimY ] = maxY - 1;
+		if ( !contains( img, view, viewPosition, imgPosition, width ) )
+			return false;
+		final Object sourceAccess = img instanceof ArrayImg ? ( ( ArrayImg< ?, ? > ) img ).update( null ) : null;
+		// NB: All spans are resolved and checked, before the first is copied.
+		final List< Span > spans = new ArrayList<>();
+		for ( long y = minY; y < maxY; y++ )
+		{
+			viewPosition[ dimY ] = y;
+			view.toImg( viewPosition, imgPosition );
+			for ( int d = 0; d < imgPosition.length; d++ )
+				imgPosition[ d ] -= img.min( d );
+			final int targetOffset = ( int ) ( ( y - target.min( 1 ) ) * width );
+			final boolean supported;
+			if ( img instanceof ArrayImg )
+				supported = addSpan( spans, sourceAccess, index( imgPosition, img, 0 ), targetArray, targetOffset, width );
+			else if ( img instanceof PlanarImg )
+				supported = addSpan( spans, ( ( PlanarImg< ?, ? > ) img ).getPlane( ( int ) index( imgPosition, img, 2 ) ), planeOffset( imgPosition, img ), targetArray, targetOffset, width );
+			else
+				supported = addCellRow( spans, ( AbstractCellImg< ?, ?, ?, ? > ) img, imgPosition, targetArray, targetOffset, width );
+			if ( !supported )
+				return false;
+		}
+		for ( final Span span : spans )
+			System.arraycopy( span.array, span.offset, targetArray, span.targetOffset, span.length );
+		return true;
+	}
+
+	private static boolean haveSameStorage( final Object sourceType, final Object targetType )
+	{
+		if ( sourceType.getClass() != targetType.getClass() || !( sourceType instanceof NativeType ) )
+			return false;
+		final Fraction entitiesPerPixel = ( ( NativeType< ? > ) sourceType ).getEntitiesPerPixel();
+		return entitiesPerPixel.getNumerator() == 1 && entitiesPerPixel.getDenominator() == 1;
+	}
+
+	/**
+	 * Returns true if the row, that starts at the given position of the view,
+	 * lies inside the image.
+	 */
+	private static boolean contains( final NativeImg< ?, ? > img, final NativeImgView view, final long[] viewPosition, final long[] imgPosition, final int width )
+	{
+		view.toImg( viewPosition, imgPosition );
+		for ( int d = 0; d < imgPosition.length; d++ )
+		{
+			final long max = d == 0 ? imgPosition[ d ] + width - 1 : imgPosition[ d ];
+			if ( imgPosition[ d ] < img.min( d ) || max > img.max( d ) )
+				return false;
+		}
+		return true;
+	}
+
+	private static < A > boolean addCellRow( final List< Span > spans, final AbstractCellImg< ?, A, ?, ? > img, final long[] position, final Object targetArray, final int targetOffset, final int width )
+	{
+		final CellGrid grid = img.getCellGrid();
+		final int n = position.length;
+		final long[] gridPosition = new long[ n ];
+		for ( int d = 1; d < n; d++ )
+			gridPosition[ d ] = position[ d ] / grid.cellDimension( d );
+		final RandomAccess< ? extends Cell< A > > cells = img.getCells().randomAccess();
+		int done = 0;
+		while ( done < width )
+		{
+			final long x = position[ 0 ] + done;
+			gridPosition[ 0 ] = x / grid.cellDimension( 0 );
+			cells.setPosition( gridPosition );
+			final Cell< A > cell = cells.get();
+			long index = 0;
+			for ( int d = n - 1; d > 0; d-- )
+				index = index * cell.dimension( d ) + position[ d ] - cell.min( d );
+			index = index * cell.dimension( 0 ) + x - cell.min( 0 );
+			final int span = ( int ) Math.min( width - done, cell.min( 0 ) + cell.dimension( 0 ) - x );
+			if ( !addSpan( spans, cell.getData(), index, targetArray, targetOffset + done, span ) )
+				return false;
+			done += span;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the span of the given access to the spans to copy. Returns false,
+	 * if the access is not supported.
+	 */
+	private static boolean addSpan( final List< Span > spans, final Object access, final long offset, final Object targetArray, final int targetOffset, final int length )
+	{
+		if ( !( access instanceof ArrayDataAccess ) )
+			return false;
+		final Object array = ReadOnlyArrays.get( ( ArrayDataAccess< ? > ) access );
+		if ( array.getClass() != targetArray.getClass() )
+			return false;
+		spans.add( new Span( array, ( int ) offset, targetOffset, length ) );
+		return true;
+	}
+
+	/**
+	 * Returns the flat index of the position, considering only the
+	 * dimensions from the given one upwards.
+	 */
+	private static long index( final long[] position, final NativeImg< ?, ? > img, final int fromDimension )
+	{
+		long index = 0;
+		for ( int d = position.length - 1; d >= fromDimension; d-- )
+			index = index * img.dimension( d ) + position[ d ];
+		return index;
+	}
+
+	private static long planeOffset( final long[] position, final NativeImg< ?, ? > img )
+	{
+		return position.length > 1 ? position[ 0 ] + position[ 1 ] * img.dimension( 0 ) : position[ 0 ];
+	}
+
+	/** A range of a source array, that is copied into the target array. */
+	private static class Span
+	{
+		private final Object array;
+
+		private final int offset;
+
+		private final int targetOffset;
+
+		private final int length;
+
+		private Span( final Object array, final int offset, final int targetOffset, final int length )
+		{
+			this.array = array;
+			this.offset = offset;
+			this.targetOffset = targetOffset;
+			this.length = length;
+		}
+	}
+}
@@ -34,6 +34,13 @@
 
 package net.imglib2.img;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imglib2.Cursor;
@@ -45,11 +52,11 @@ import net.imglib2.img.imageplus.FloatImagePlus;
 import net.imglib2.img.imageplus.ImagePlusImg;
 import net.imglib2.img.imageplus.ImagePlusImgFactory;
 import net.imglib2.img.imageplus.IntImagePlus;
+import net.imglib2.img.imageplus.ReadOnlyArrays;
 import net.imglib2.img.imageplus.ShortImagePlus;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
-import net.imglib2.type.numeric.ComplexType;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
@@ -69,6 +76,9 @@ import ij.ImagePlus;
  */
 public class ImagePlusAdapter
 {
+	/** Minimal number of pixels converted by one task of {@link #convertFloat(ImagePlus, ExecutorService)}. */
+	private static final long MIN_PIXELS_PER_TASK = 1 << 16;
+
 	@SuppressWarnings( "unchecked" )
 	public static < T extends NumericType< T > & NativeType< T > > ImagePlusImg< T, ? > wrap( final ImagePlus imp )
 	{
@@ -231,39 +241,144 @@ public class ImagePlusAdapter
 
 	public static Img< FloatType > convertFloat( final ImagePlus imp )
 	{
+		return convertFloat( imp, null );
+	}
 
+	/**
+	 * Converts an 8, 16 bit or RGB {@link ImagePlus} into a
+	 * {@link FloatImagePlus}. RGB pixels are converted to luminance times
+	 * alpha. A 32 bit {@link ImagePlus} is wrapped. The planes are converted
+	 * with primitive loops, in parallel if an {@link ExecutorService} is
+	 * given.
+	 *
+	 * @param service {@link ExecutorService} used for the conversion, null
+	 *            runs the conversion on the calling thread.
+	 */
+	public static Img< FloatType > convertFloat( final ImagePlus imp, final ExecutorService service )
+	{
 		switch ( imp.getType() )
 		{
 		case ImagePlus.GRAY8:
-			return convertToFloat( wrapByte( imp ), new NumberToFloatConverter< UnsignedByteType >() );
+			return convertPlanesToFloat( wrapByte( imp ), ImagePlusAdapter::convertBytes, service );
 		case ImagePlus.GRAY16:
-			return convertToFloat( wrapShort( imp ), new NumberToFloatConverter< UnsignedShortType >() );
+			return convertPlanesToFloat( wrapShort( imp ), ImagePlusAdapter::convertShorts, service );
 		case ImagePlus.GRAY32:
 			return wrapFloat( imp );
 		case ImagePlus.COLOR_RGB:
-			return convertToFloat( wrapRGBA( imp ), new ARGBtoFloatConverter() );
+			return convertPlanesToFloat( wrapRGBA( imp ), ImagePlusAdapter::convertARGB, service );
 		default:
 			throw new RuntimeException( "Only 8, 16, 32-bit and RGB supported!" );
 		}
 	}
 
-	static private class ARGBtoFloatConverter implements Converter< ARGBType, FloatType >
+	/**
+	 * Converts a range of the pixels of a plane to float.
+	 */
+	private interface PlaneToFloat
 	{
-		/** Luminance times alpha. */
-		@Override
-		public void convert( final ARGBType input, final FloatType output )
+		void convert( Object source, float[] target, int offset, int length );
+	}
+
+	private static void convertBytes( final Object source, final float[] target, final int offset, final int length )
+	{
+		final byte[] pixels = ( byte[] ) source;
+		for ( int i = offset; i < offset + length; i++ )
+			target[ i ] = pixels[ i ] & 0xff;
+	}
+
+	private static void convertShorts( final Object source, final float[] target, final int offset, final int length )
+	{
+		final short[] pixels = ( short[] ) source;
+		for ( int i = offset; i < offset + length; i++ )
+			target[ i ] = pixels[ i ] & 0xffff;
+	}
+
+	/** Luminance times alpha. */
+	private static void convertARGB( final Object source, final float[] target, final int offset, final int length )
+	{
+		final int[] pixels = ( int[] ) source;
+		for ( int i = offset; i < offset + length; i++ )
 		{
-			final int v = input.get();
-			output.setReal( ( ( v >> 24 ) & 0xff ) * ( ( ( v >> 16 ) & 0xff ) * 0.299 + ( ( v >> 8 ) & 0xff ) * 0.587 + ( v & 0xff ) * 0.144 ) );
+			final int v = pixels[ i ];
+			target[ i ] = ( float ) ( ( ( v >> 24 ) & 0xff ) * ( ( ( v >> 16 ) & 0xff ) * 0.299 + ( ( v >> 8 ) & 0xff ) * 0.587 + ( v & 0xff ) * 0.144 ) );
 		}
 	}
 
-	static private class NumberToFloatConverter< T extends ComplexType< T > > implements Converter< T, FloatType >
+	/**
+	 * Converts the planes of the input into the planes of a new
+	 * {@link FloatImagePlus}. The pixels are split into ranges, that are
+	 * converted in parallel. A range may cover parts of several planes, such
+	 * that images with few but large planes are converted in parallel, too.
+	 */
+	private static Img< FloatType > convertPlanesToFloat( final ImagePlusImg< ?, ? > input, final PlaneToFloat converter, final ExecutorService service )
 	{
-		@Override
-		public void convert( final T input, final FloatType output )
+		final ImagePlusImg< FloatType, ? > output = new ImagePlusImgFactory<>( new FloatType() ).create( input );
+		final long planeSize = ( long ) input.getWidth() * input.getHeight();
+		final long size = planeSize * input.numSlices();
+		final int numTasks = service == null ? 1 : ( int ) Math.max( 1, Math.min( size / MIN_PIXELS_PER_TASK, 4 * Runtime.getRuntime().availableProcessors() ) );
+		final List< Callable< Void > > tasks = new ArrayList<>( numTasks );
+		for ( int t = 0; t < numTasks; t++ )
+		{
+			final long start = size * t / numTasks;
+			final long end = size * ( t + 1 ) / numTasks;
+			tasks.add( () -> {
+				long i = start;
+				while ( i < end )
+				{
+					final int plane = ( int ) ( i / planeSize );
+					final int offset = ( int ) ( i % planeSize );
+					final int length = ( int ) Math.min( planeSize - offset, end - i );
+					final Object source = ReadOnlyArrays.get( input.getPlane( plane ) );
+					final float[] target = ( float[] ) output.getPlane( plane ).getCurrentStorageArray();
+					converter.convert( source, target, offset, length );
+					i += length;
+				}
+				return null;
+			} );
+		}
+		if ( service == null )
+			tasks.forEach( ImagePlusAdapter::call );
+		else
+			invokeAll( service, tasks );
+		return output;
+	}
+
+	private static void call( final Callable< Void > task )
+	{
+		try
+		{
+			task.call();
+		}
+		catch ( final RuntimeException e )
+		{
+			throw e;
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	private static void invokeAll( final ExecutorService service, final List< Callable< Void > > tasks )
+	{
+		try
+		{
+			for ( final Future< Void > future : service.invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
 		{
-			output.setReal( input.getRealFloat() );
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
 		}
 	}
 
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+/**
+ * Invalid placeholders for the planes of the volatile images of
+ * {@link VirtualStackAdapter}, that are not loaded yet. A placeholder is
+ * shared by all planes of an image, it reads zeros, and writes into it are
+ * discarded.
+ */
+final class InvalidPlaneArrays
+{
+	private InvalidPlaneArrays()
+	{
+		// prevent instantiation of utility class
+	}
+
+	static VolatileByteArray bytes( final int size )
+	{
+		return new Bytes( size );
+	}
+
+	static VolatileShortArray shorts( final int size )
+	{
+		return new Shorts( size );
+	}
+
+	static VolatileFloatArray floats( final int size )
+	{
+		return new Floats( size );
+	}
+
+	static VolatileIntArray ints( final int size )
+	{
+		return new Ints( size );
+	}
+
+	private static final class Bytes extends VolatileByteArray
+	{
+		private Bytes( final int size )
+		{
+			super( size, false );
+		}
+
+		@Override
+		public void setValue( final int index, final byte value )
+		{
+			// discard
+		}
+	}
+
+	private static final class Shorts extends VolatileShortArray
+	{
+		private Shorts( final int size )
+		{
+			super( size, false );
+		}
+
+		@Override
+		public void setValue( final int index, final short value )
+		{
+			// discard
+		}
+	}
+
+	private static final class Floats extends VolatileFloatArray
+	{
+		private Floats( final int size )
+		{
+			super( size, false );
+		}
+
+		@Override
+		public void setValue( final int index, final float value )
+		{
+			// discard
+		}
+	}
+
+	private static final class Ints extends VolatileIntArray
+	{
+		private Ints( final int size )
+		{
+			super( size, false );
+		}
+
+		@Override
+		public void setValue( final int index, final int value )
+		{
+			// discard
+		}
+	}
+}
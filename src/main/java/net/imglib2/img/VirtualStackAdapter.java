@@ -35,19 +35,31 @@
 package net.imglib2.img;
 
 import java.util.AbstractList;
-import java.util.concurrent.ExecutionException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.stream.LongStream;
 
 import net.imagej.ImgPlus;
 import net.imagej.axis.CalibratedAxis;
-import net.imglib2.cache.Cache;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.Dirty;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
 import net.imglib2.img.basictypeaccess.array.FloatArray;
 import net.imglib2.img.basictypeaccess.array.IntArray;
 import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.img.display.imagej.CalibrationUtils;
 import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.type.NativeType;
@@ -57,13 +69,20 @@ import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileARGBType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
 import net.imglib2.util.Fraction;
 
 import ij.ImagePlus;
 
 /**
  * Wrapper for ImagePlus using imglib2-caches. It loads the planes lazily, which
- * is especially useful when wrapping a virtual stack.
+ * is especially useful when wrapping a virtual stack. Caching and loading
+ * planes in advance can be configured with a {@link VirtualStackCache}. Very
+ * large planes can be split into tiles, see
+ * {@link #wrapTiled(ImagePlus, int, int)}.
  *
  * @author Matthias Arzt
  */
@@ -77,7 +96,16 @@ public class VirtualStackAdapter
 	 */
 	public static ImgPlus< UnsignedByteType > wrapByte( final ImagePlus image )
 	{
-		return internWrap( image, ImagePlus.GRAY8, new UnsignedByteType(), array -> new ByteArray( ( byte[] ) array ) );
+		return wrapByte( image, VirtualStackCache.softReferences() );
+	}
+
+	/**
+	 * Same as {@link #wrapByte(ImagePlus)}, but the loaded planes are kept in
+	 * the given {@link VirtualStackCache}.
+	 */
+	public static ImgPlus< UnsignedByteType > wrapByte( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrap( image, ImagePlus.GRAY8, new UnsignedByteType(), array -> new ByteArray( ( byte[] ) array ), cache );
 	}
 
 	/**
@@ -88,7 +116,16 @@ public class VirtualStackAdapter
 	 */
 	public static ImgPlus< UnsignedShortType > wrapShort( final ImagePlus image )
 	{
-		return internWrap( image, ImagePlus.GRAY16, new UnsignedShortType(), array -> new ShortArray( ( short[] ) array ) );
+		return wrapShort( image, VirtualStackCache.softReferences() );
+	}
+
+	/**
+	 * Same as {@link #wrapShort(ImagePlus)}, but the loaded planes are kept in
+	 * the given {@link VirtualStackCache}.
+	 */
+	public static ImgPlus< UnsignedShortType > wrapShort( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrap( image, ImagePlus.GRAY16, new UnsignedShortType(), array -> new ShortArray( ( short[] ) array ), cache );
 	}
 
 	/**
@@ -99,7 +136,16 @@ public class VirtualStackAdapter
 	 */
 	public static ImgPlus< FloatType > wrapFloat( final ImagePlus image )
 	{
-		return internWrap( image, ImagePlus.GRAY32, new FloatType(), array -> new FloatArray( ( float[] ) array ) );
+		return wrapFloat( image, VirtualStackCache.softReferences() );
+	}
+
+	/**
+	 * Same as {@link #wrapFloat(ImagePlus)}, but the loaded planes are kept in
+	 * the given {@link VirtualStackCache}.
+	 */
+	public static ImgPlus< FloatType > wrapFloat( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrap( image, ImagePlus.GRAY32, new FloatType(), array -> new FloatArray( ( float[] ) array ), cache );
 	}
 
 	/**
@@ -110,7 +156,16 @@ public class VirtualStackAdapter
 	 */
 	public static ImgPlus< UnsignedIntType > wrapInt( final ImagePlus image )
 	{
-		return internWrap( image, ImagePlus.COLOR_RGB, new UnsignedIntType(), array -> new IntArray( ( int[] ) array ) );
+		return wrapInt( image, VirtualStackCache.softReferences() );
+	}
+
+	/**
+	 * Same as {@link #wrapInt(ImagePlus)}, but the loaded planes are kept in
+	 * the given {@link VirtualStackCache}.
+	 */
+	public static ImgPlus< UnsignedIntType > wrapInt( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrap( image, ImagePlus.COLOR_RGB, new UnsignedIntType(), array -> new IntArray( ( int[] ) array ), cache );
 	}
 
 	/**
@@ -121,7 +176,16 @@ public class VirtualStackAdapter
 	 */
 	public static ImgPlus< ARGBType > wrapRGBA( final ImagePlus image )
 	{
-		return internWrap( image, ImagePlus.COLOR_RGB, new ARGBType(), array -> new IntArray( ( int[] ) array ) );
+		return wrapRGBA( image, VirtualStackCache.softReferences() );
+	}
+
+	/**
+	 * Same as {@link #wrapRGBA(ImagePlus)}, but the loaded planes are kept in
+	 * the given {@link VirtualStackCache}.
+	 */
+	public static ImgPlus< ARGBType > wrapRGBA( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrap( image, ImagePlus.COLOR_RGB, new ARGBType(), array -> new IntArray( ( int[] ) array ), cache );
 	}
 
 	/**
@@ -132,28 +196,292 @@ public class VirtualStackAdapter
 	 * calibration of the given image.
 	 */
 	public static ImgPlus< ? > wrap( final ImagePlus image )
+	{
+		return wrap( image, VirtualStackCache.softReferences() );
+	}
+
+	/**
+	 * Same as {@link #wrap(ImagePlus)}, but the loaded planes are kept in the
+	 * given {@link VirtualStackCache}.
+	 */
+	public static ImgPlus< ? > wrap( final ImagePlus image, final VirtualStackCache cache )
+	{
+		switch ( image.getType() )
+		{
+		case ImagePlus.GRAY8:
+			return wrapByte( image, cache );
+		case ImagePlus.GRAY16:
+			return wrapShort( image, cache );
+		case ImagePlus.GRAY32:
+			return wrapFloat( image, cache );
+		case ImagePlus.COLOR_RGB:
+			return wrapRGBA( image, cache );
+		}
+		throw new RuntimeException( "Only 8, 16, 32-bit and RGB supported!" );
+	}
+
+	/**
+	 * Wraps an {@link ImagePlus}, into an {@link ImgPlus}, that is backed by a
+	 * {@link CachedCellImg} with XY tiles of the given size. Each tile is
+	 * copied from the loaded plane, and cached independently. This is useful
+	 * for very large planes, algorithms that access only a few tiles keep a
+	 * small working set. The planes are loaded with a
+	 * {@link VirtualStackCache} that keeps only the most recent plane. The
+	 * pixel type of the returned image depends on the type of the ImagePlus.
+	 */
+	public static ImgPlus< ? > wrapTiled( final ImagePlus image, final int tileWidth, final int tileHeight )
+	{
+		return wrapTiled( image, tileWidth, tileHeight, VirtualStackCache.boundedByCount( 1 ) );
+	}
+
+	/**
+	 * Same as {@link #wrapTiled(ImagePlus, int, int)}, but the full planes are
+	 * kept in the given {@link VirtualStackCache}, while the tiles are
+	 * extracted.
+	 */
+	public static ImgPlus< ? > wrapTiled( final ImagePlus image, final int tileWidth, final int tileHeight, final VirtualStackCache planeCache )
+	{
+		switch ( image.getType() )
+		{
+		case ImagePlus.GRAY8:
+			return wrapByteTiled( image, tileWidth, tileHeight, planeCache );
+		case ImagePlus.GRAY16:
+			return wrapShortTiled( image, tileWidth, tileHeight, planeCache );
+		case ImagePlus.GRAY32:
+			return wrapFloatTiled( image, tileWidth, tileHeight, planeCache );
+		case ImagePlus.COLOR_RGB:
+			return wrapRGBATiled( image, tileWidth, tileHeight, planeCache );
+		}
+		throw new RuntimeException( "Only 8, 16, 32-bit and RGB supported!" );
+	}
+
+	/**
+	 * Same as {@link #wrapTiled(ImagePlus, int, int, VirtualStackCache)}, but
+	 * for a 8 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< UnsignedByteType > wrapByteTiled( final ImagePlus image, final int tileWidth, final int tileHeight, final VirtualStackCache planeCache )
+	{
+		return internWrapTiled( image, ImagePlus.GRAY8, new UnsignedByteType(), array -> new ByteArray( ( byte[] ) array ), tileWidth, tileHeight, planeCache );
+	}
+
+	/**
+	 * Same as {@link #wrapTiled(ImagePlus, int, int, VirtualStackCache)}, but
+	 * for a 16 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< UnsignedShortType > wrapShortTiled( final ImagePlus image, final int tileWidth, final int tileHeight, final VirtualStackCache planeCache )
+	{
+		return internWrapTiled( image, ImagePlus.GRAY16, new UnsignedShortType(), array -> new ShortArray( ( short[] ) array ), tileWidth, tileHeight, planeCache );
+	}
+
+	/**
+	 * Same as {@link #wrapTiled(ImagePlus, int, int, VirtualStackCache)}, but
+	 * for a 32 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< FloatType > wrapFloatTiled( final ImagePlus image, final int tileWidth, final int tileHeight, final VirtualStackCache planeCache )
+	{
+		return internWrapTiled( image, ImagePlus.GRAY32, new FloatType(), array -> new FloatArray( ( float[] ) array ), tileWidth, tileHeight, planeCache );
+	}
+
+	/**
+	 * Same as {@link #wrapTiled(ImagePlus, int, int, VirtualStackCache)}, but
+	 * for a 24 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< ARGBType > wrapRGBATiled( final ImagePlus image, final int tileWidth, final int tileHeight, final VirtualStackCache planeCache )
+	{
+		return internWrapTiled( image, ImagePlus.COLOR_RGB, new ARGBType(), array -> new IntArray( ( int[] ) array ), tileWidth, tileHeight, planeCache );
+	}
+
+	/**
+	 * Wraps a 8 bit {@link ImagePlus}, into a writable {@link ImgPlus}. Like
+	 * {@link #wrapByte(ImagePlus, VirtualStackCache)}, planes are loaded
+	 * lazily. Modified planes are written back to the {@link ij.ImageStack}
+	 * with {@link ij.ImageStack#setPixels(Object, int)}, when they are evicted
+	 * from the given cache, and when {@link VirtualStackCache#flush()} is
+	 * called. Call {@link VirtualStackCache#flush()} after writing, to make
+	 * sure all changes are written back. Planes, that are evicted while a
+	 * cursor still writes into them, are written back again by
+	 * {@link VirtualStackCache#flush()}, or after they were garbage
+	 * collected.
+	 *
+	 * @param cache Bounded {@link VirtualStackCache}, soft references are not
+	 *            supported.
+	 */
+	public static ImgPlus< UnsignedByteType > wrapByteWritable( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrapWritable( image, ImagePlus.GRAY8, new UnsignedByteType(), WriteTrackingArrays::bytes, cache );
+	}
+
+	/**
+	 * Same as {@link #wrapByteWritable}, but for a 16 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< UnsignedShortType > wrapShortWritable( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrapWritable( image, ImagePlus.GRAY16, new UnsignedShortType(), WriteTrackingArrays::shorts, cache );
+	}
+
+	/**
+	 * Same as {@link #wrapByteWritable}, but for a 32 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< FloatType > wrapFloatWritable( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrapWritable( image, ImagePlus.GRAY32, new FloatType(), WriteTrackingArrays::floats, cache );
+	}
+
+	/**
+	 * Same as {@link #wrapByteWritable}, but for a 24 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< ARGBType > wrapRGBAWritable( final ImagePlus image, final VirtualStackCache cache )
+	{
+		return internWrapWritable( image, ImagePlus.COLOR_RGB, new ARGBType(), WriteTrackingArrays::ints, cache );
+	}
+
+	/**
+	 * Same as {@link #wrapByteWritable}, the pixel type depends on the type of
+	 * the {@link ImagePlus}.
+	 */
+	public static ImgPlus< ? > wrapWritable( final ImagePlus image, final VirtualStackCache cache )
+	{
+		switch ( image.getType() )
+		{
+		case ImagePlus.GRAY8:
+			return wrapByteWritable( image, cache );
+		case ImagePlus.GRAY16:
+			return wrapShortWritable( image, cache );
+		case ImagePlus.GRAY32:
+			return wrapFloatWritable( image, cache );
+		case ImagePlus.COLOR_RGB:
+			return wrapRGBAWritable( image, cache );
+		}
+		throw new RuntimeException( "Only 8, 16, 32-bit and RGB supported!" );
+	}
+
+	/**
+	 * Wraps a 8 bit {@link ImagePlus}, into an {@link ImgPlus} with volatile
+	 * pixel type. Accessing a plane, that is not in the given
+	 * {@link VirtualStackCache}, never blocks. Instead the plane is loaded on
+	 * the given {@link ExecutorService}, and until then the pixels of the
+	 * plane are invalid, see {@link net.imglib2.Volatile#isValid()}. This
+	 * keeps interactive viewers responsive. The returned image is read-only,
+	 * writes into loaded planes aren't written back, and writes into invalid
+	 * pixels are discarded.
+	 */
+	public static ImgPlus< VolatileUnsignedByteType > wrapByteVolatile( final ImagePlus image, final VirtualStackCache cache, final ExecutorService fetchers )
+	{
+		return internWrapVolatile( image, ImagePlus.GRAY8, new VolatileUnsignedByteType(), array -> new VolatileByteArray( ( byte[] ) array, true ),
+				InvalidPlaneArrays::bytes, cache, fetchers );
+	}
+
+	/**
+	 * Same as {@link #wrapByteVolatile}, but for a 16 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< VolatileUnsignedShortType > wrapShortVolatile( final ImagePlus image, final VirtualStackCache cache, final ExecutorService fetchers )
+	{
+		return internWrapVolatile( image, ImagePlus.GRAY16, new VolatileUnsignedShortType(), array -> new VolatileShortArray( ( short[] ) array, true ),
+				InvalidPlaneArrays::shorts, cache, fetchers );
+	}
+
+	/**
+	 * Same as {@link #wrapByteVolatile}, but for a 32 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< VolatileFloatType > wrapFloatVolatile( final ImagePlus image, final VirtualStackCache cache, final ExecutorService fetchers )
+	{
+		return internWrapVolatile( image, ImagePlus.GRAY32, new VolatileFloatType(), array -> new VolatileFloatArray( ( float[] ) array, true ),
+				InvalidPlaneArrays::floats, cache, fetchers );
+	}
+
+	/**
+	 * Same as {@link #wrapByteVolatile}, but for a 24 bit {@link ImagePlus}.
+	 */
+	public static ImgPlus< VolatileARGBType > wrapRGBAVolatile( final ImagePlus image, final VirtualStackCache cache, final ExecutorService fetchers )
+	{
+		return internWrapVolatile( image, ImagePlus.COLOR_RGB, new VolatileARGBType(), array -> new VolatileIntArray( ( int[] ) array, true ),
+				InvalidPlaneArrays::ints, cache, fetchers );
+	}
+
+	/**
+	 * Same as {@link #wrapByteVolatile}, the volatile pixel type depends on
+	 * the type of the {@link ImagePlus}.
+	 */
+	public static ImgPlus< ? > wrapVolatile( final ImagePlus image, final VirtualStackCache cache, final ExecutorService fetchers )
 	{
 		switch ( image.getType() )
 		{
 		case ImagePlus.GRAY8:
-			return wrapByte( image );
+			return wrapByteVolatile( image, cache, fetchers );
 		case ImagePlus.GRAY16:
-			return wrapShort( image );
+			return wrapShortVolatile( image, cache, fetchers );
 		case ImagePlus.GRAY32:
-			return wrapFloat( image );
+			return wrapFloatVolatile( image, cache, fetchers );
 		case ImagePlus.COLOR_RGB:
-			return wrapRGBA( image );
+			return wrapRGBAVolatile( image, cache, fetchers );
 		}
 		throw new RuntimeException( "Only 8, 16, 32-bit and RGB supported!" );
 	}
 
-	private static < T extends NativeType< T >, A extends ArrayDataAccess< A > > ImgPlus< T > internWrap( final ImagePlus image, final int expectedType, final T type, final Function< Object, A > createArrayAccess )
+	private static < T extends NativeType< T >, A extends ArrayDataAccess< A > > ImgPlus< T > internWrap( final ImagePlus image, final int expectedType, final T type, final Function< Object, A > createArrayAccess, final VirtualStackCache cache )
+	{
+		if ( image.getType() != expectedType )
+			throw new IllegalArgumentException();
+		return createImgPlus( image, type, new ImagePlusLoader<>( image, createArrayAccess, cache ) );
+	}
+
+	private static < T extends NativeType< T >, A extends ArrayDataAccess< A > > ImgPlus< T > internWrapTiled( final ImagePlus image, final int expectedType, final T type,
+			final Function< Object, A > createArrayAccess, final int tileWidth, final int tileHeight, final VirtualStackCache planeCache )
+	{
+		if ( image.getType() != expectedType )
+			throw new IllegalArgumentException();
+		if ( tileWidth < 1 || tileHeight < 1 )
+			throw new IllegalArgumentException( "The tile size must be positive." );
+		final ImagePlusLoader< A > planes = new ImagePlusLoader<>( image, createArrayAccess, planeCache );
+		final long[] dimensions = getNonTrivialDimensions( image );
+		final int[] cellDimensions = new int[ dimensions.length ];
+		Arrays.fill( cellDimensions, 1 );
+		cellDimensions[ 0 ] = tileWidth;
+		cellDimensions[ 1 ] = tileHeight;
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+		final int width = image.getWidth();
+		final CacheLoader< Long, Cell< A > > loader = index -> {
+			final long[] tileMin = new long[ dimensions.length ];
+			final int[] tileDimensions = new int[ dimensions.length ];
+			grid.getCellDimensions( index, tileMin, tileDimensions );
+			long plane = 0;
+			for ( int d = dimensions.length - 1; d >= 2; d-- )
+				plane = plane * dimensions[ d ] + tileMin[ d ];
+			final A source = planes.get( ( int ) plane );
+			final A tile = source.createArray( tileDimensions[ 0 ] * tileDimensions[ 1 ] );
+			final Object sourceArray = source.getCurrentStorageArray();
+			final Object tileArray = tile.getCurrentStorageArray();
+			for ( int y = 0; y < tileDimensions[ 1 ]; y++ )
+				System.arraycopy( sourceArray, ( int ) ( ( tileMin[ 1 ] + y ) * width + tileMin[ 0 ] ), tileArray, y * tileDimensions[ 0 ], tileDimensions[ 0 ] );
+			return new Cell<>( tileDimensions, tileMin, tile );
+		};
+		final CachedCellImg< T, A > tiled = new ReadOnlyCachedCellImgFactory().createWithCacheLoader( dimensions, type, loader,
+				ReadOnlyCachedCellImgOptions.options().volatileAccesses( false ).cellDimensions( cellDimensions ) );
+		return new ImgPlus<>( tiled, image.getTitle(), CalibrationUtils.getNonTrivialAxes( image ) );
+	}
+
+	private static < T extends NativeType< T >, A extends ArrayDataAccess< A > & Dirty > ImgPlus< T > internWrapWritable( final ImagePlus image, final int expectedType, final T type, final Function< Object, A > createArrayAccess, final VirtualStackCache cache )
 	{
 		if ( image.getType() != expectedType )
 			throw new IllegalArgumentException();
-		final ImagePlusLoader< A > loader = new ImagePlusLoader<>( image, createArrayAccess );
+		if ( cache.usesSoftReferences() )
+			throw new IllegalArgumentException( "Writable images require a bounded VirtualStackCache." );
+		return createImgPlus( image, type, new WritableImagePlusLoader<>( image, createArrayAccess, cache ) );
+	}
+
+	private static < T extends NativeType< T >, A extends ArrayDataAccess< A > > ImgPlus< T > internWrapVolatile( final ImagePlus image, final int expectedType, final T type,
+			final Function< Object, A > createArrayAccess, final IntFunction< A > createInvalidAccess, final VirtualStackCache cache, final ExecutorService fetchers )
+	{
+		if ( image.getType() != expectedType )
+			throw new IllegalArgumentException();
+		final A invalid = createInvalidAccess.apply( image.getWidth() * image.getHeight() );
+		return createImgPlus( image, type, new VolatilePlaneLoader<>( image, createArrayAccess, invalid, cache, fetchers ) );
+	}
+
+	private static < T extends NativeType< T >, A extends ArrayDataAccess< A > > ImgPlus< T > createImgPlus( final ImagePlus image, final T type, final List< A > planes )
+	{
 		final long[] dimensions = getNonTrivialDimensions( image );
-		final PlanarImg< T, A > cached = new PlanarImg<>( loader, dimensions, new Fraction() );
+		final PlanarImg< T, A > cached = new PlanarImg<>( planes, dimensions, new Fraction() );
 		cached.setLinkedType( ( ( NativeTypeFactory< T, A > ) type.getNativeTypeFactory() ).createLinkedType( cached ) );
 		final CalibratedAxis[] axes = CalibrationUtils.getNonTrivialAxes( image );
 		final ImgPlus< T > wrap = new ImgPlus<>( cached, image.getTitle(), axes );
@@ -169,33 +497,153 @@ public class VirtualStackAdapter
 
 	private static class ImagePlusLoader< A extends ArrayDataAccess< A > > extends AbstractList< A >
 	{
-		private final ImagePlus image;
+		final ImagePlus image;
 
-		private final Cache< Integer, A > cache;
+		final VirtualStackCache cache;
 
-		private final Function< Object, A > arrayFactory;
+		final Function< Object, A > arrayFactory;
+
+		private volatile int lastKey = -1;
 
-		public ImagePlusLoader( final ImagePlus image, final Function< Object, A > arrayFactory )
+		public ImagePlusLoader( final ImagePlus image, final Function< Object, A > arrayFactory, final VirtualStackCache cache )
 		{
 			this.arrayFactory = arrayFactory;
 			this.image = image;
-			cache = new SoftRefLoaderCache< Integer, A >().withLoader( this::load );
+			this.cache = cache;
 		}
 
 		@Override
 		public A get( final int key )
 		{
-			try
+			// NB: Planes requested in sequence are loaded in advance.
+			final int previous = lastKey;
+			lastKey = key;
+			if ( key == previous + 1 )
+				cache.readAhead( this, key, size(), this::load );
+			return cache.get( this, key, this::load );
+		}
+
+		A load( final int key )
+		{
+			return arrayFactory.apply( image.getStack().getPixels( key + 1 ) );
+		}
+
+		@Override
+		public int size()
+		{
+			return image.getStackSize();
+		}
+	}
+
+	/**
+	 * Loads planes like {@link ImagePlusLoader}, and writes modified planes
+	 * back to the {@link ij.ImageStack}.
+	 */
+	private static class WritableImagePlusLoader< A extends ArrayDataAccess< A > & Dirty > extends ImagePlusLoader< A > implements VirtualStackCache.WriteBack
+	{
+		public WritableImagePlusLoader( final ImagePlus image, final Function< Object, A > arrayFactory, final VirtualStackCache cache )
+		{
+			super( image, arrayFactory, cache );
+		}
+
+		/**
+		 * Called by {@link PlanarImg#setPlane(int, ArrayDataAccess)}. The plane
+		 * is written to the {@link ij.ImageStack} immediately.
+		 */
+		@Override
+		public A set( final int key, final A plane )
+		{
+			// NB: The given plane doesn't need to be of type A, only the
+			// storage array is used.
+			final Object pixels = plane.getCurrentStorageArray();
+			synchronized ( image )
 			{
-				return cache.get( key );
+				image.getStack().setPixels( pixels, key + 1 );
 			}
-			catch ( final ExecutionException e )
+			cache.set( this, key, arrayFactory.apply( pixels ) );
+			return null;
+		}
+
+		@Override
+		public void writeBack( final int index, final Object plane )
+		{
+			detach( index, plane ).run();
+		}
+
+		@Override
+		public Runnable detach( final int index, final Object plane )
+		{
+			@SuppressWarnings( "unchecked" )
+			final Object pixels = ( ( A ) plane ).getCurrentStorageArray();
+			final WriteTrackingArrays.Flag flag = ( ( WriteTrackingArrays.Tracked ) plane ).getFlag();
+			return () -> writeBack( index, pixels, flag );
+		}
+
+		private void writeBack( final int index, final Object pixels, final WriteTrackingArrays.Flag flag )
+		{
+			// NB: Concurrent write backs of the same plane are serialized.
+			synchronized ( flag )
 			{
-				throw new RuntimeException( e );
+				if ( !flag.isDirty() )
+					return;
+				// NB: The flag is reset before the pixels are copied, such that
+				// writes during the copy mark the plane dirty again. It is set
+				// again, if the write fails, the plane is only clean after the
+				// write succeeded.
+				flag.setDirty( false );
+				try
+				{
+					synchronized ( image )
+					{
+						image.getStack().setPixels( pixels, index + 1 );
+					}
+				}
+				catch ( final RuntimeException | Error e )
+				{
+					flag.setDirty( true );
+					throw e;
+				}
 			}
 		}
+	}
+
+	/**
+	 * Returns cached planes, or an invalid placeholder, while the plane is
+	 * loaded in the background.
+	 */
+	private static class VolatilePlaneLoader< A > extends AbstractList< A >
+	{
+		private final ImagePlus image;
+
+		private final Function< Object, A > arrayFactory;
+
+		private final A invalid;
+
+		private final VirtualStackCache cache;
+
+		private final ExecutorService fetchers;
+
+		public VolatilePlaneLoader( final ImagePlus image, final Function< Object, A > arrayFactory, final A invalid, final VirtualStackCache cache,
+				final ExecutorService fetchers )
+		{
+			this.image = image;
+			this.arrayFactory = arrayFactory;
+			this.invalid = invalid;
+			this.cache = cache;
+			this.fetchers = fetchers;
+		}
+
+		@Override
+		public A get( final int key )
+		{
+			final A plane = cache.getIfPresent( this, key );
+			if ( plane != null )
+				return plane;
+			cache.loadInBackground( this, key, this::load, fetchers );
+			return invalid;
+		}
 
-		private A load( final Integer key )
+		private A load( final int key )
 		{
 			return arrayFactory.apply( image.getStack().getPixels( key + 1 ) );
 		}
@@ -0,0 +1,726 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * Cache for the planes loaded by the images returned by
+ * {@link VirtualStackAdapter}. There are three policies:
+ * <ul>
+ * <li>{@link #softReferences()} keeps the planes until the garbage collector
+ * needs the memory. This is the default.</li>
+ * <li>{@link #boundedByCount(int)} keeps the given number of least recently
+ * used planes.</li>
+ * <li>{@link #boundedByBytes(long)} keeps the least recently used planes, up
+ * to the given total size in bytes.</li>
+ * </ul>
+ * A {@link VirtualStackCache} can be shared by multiple images, the limit
+ * then applies to all of them together. The numbers of hits, misses and
+ * evictions, and the number of bytes resident in the cache can be queried,
+ * to monitor memory usage.
+ * <p>
+ * Optionally, planes can be loaded in advance, see
+ * {@link #setReadAhead(ExecutorService, int)}.
+ * <p>
+ * Modified planes of writable images, see
+ * {@link VirtualStackAdapter#wrapWritable(ij.ImagePlus, VirtualStackCache)},
+ * are written back to the {@link ij.ImageStack}, when they are evicted, and
+ * when {@link #flush()} or {@link #clear()} is called. Writable images
+ * require a bounded cache, because planes cleared by the garbage collector
+ * can't be written back.
+ * <p>
+ * A cursor may still write into a plane after it was evicted. Therefore,
+ * evicted planes of writable images are tracked, until they are garbage
+ * collected. A request for such a plane returns it, instead of loading a
+ * second copy, and {@link #flush()} writes it back again. The storage array
+ * and the dirty flag of an evicted plane are kept, until the cache notices,
+ * that the plane was garbage collected, and writes it back a last time.
+ */
+public class VirtualStackCache
+{
+	private enum Policy
+	{
+		SOFT_REFERENCES, COUNT, BYTES
+	}
+
+	private final Policy policy;
+
+	private final long limit;
+
+	private final LinkedHashMap< Key, Entry > entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private final Map< Key, FutureTask< Object > > loading = new HashMap<>();
+
+	private final ReferenceQueue< Object > queue = new ReferenceQueue<>();
+
+	/** Evicted planes of writable images, that may still be written. */
+	private final Map< Key, EvictedPlaneReference > evictedPlanes = new HashMap<>();
+
+	private final ReferenceQueue< Object > evictedQueue = new ReferenceQueue<>();
+
+	private long bytes = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	private long prefetches = 0;
+
+	private ExecutorService readAheadService = null;
+
+	private int readAheadDepth = 0;
+
+	private VirtualStackCache( final Policy policy, final long limit )
+	{
+		if ( limit < 0 )
+			throw new IllegalArgumentException( "The limit of the cache must not be negative." );
+		this.policy = policy;
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns a cache that keeps planes, until the garbage collector needs the
+	 * memory.
+	 */
+	public static VirtualStackCache softReferences()
+	{
+		return new VirtualStackCache( Policy.SOFT_REFERENCES, 0 );
+	}
+
+	/**
+	 * Returns a cache that keeps at most the given number of least recently
+	 * used planes.
+	 */
+	public static VirtualStackCache boundedByCount( final int maxPlanes )
+	{
+		return new VirtualStackCache( Policy.COUNT, maxPlanes );
+	}
+
+	/**
+	 * Returns a cache that keeps the least recently used planes, up to the
+	 * given total size in bytes. Planes larger than this size are not
+	 * cached, and don't evict other planes.
+	 */
+	public static VirtualStackCache boundedByBytes( final long maxBytes )
+	{
+		return new VirtualStackCache( Policy.BYTES, maxBytes );
+	}
+
+	/**
+	 * Owner of cached planes, that writes modified planes back to the image.
+	 */
+	interface WriteBack
+	{
+		/**
+		 * Writes the given plane back to the image, if it was modified.
+		 */
+		void writeBack( int index, Object plane );
+
+		/**
+		 * Returns a task, that does the same as
+		 * {@link #writeBack(int, Object)}, without referencing the given
+		 * plane. It is run, after the plane was garbage collected.
+		 */
+		Runnable detach( int index, Object plane );
+	}
+
+	/**
+	 * Enables loading planes in advance. If the planes of an image are
+	 * requested in sequence, for example while iterating the image in flat
+	 * order, the next planes are loaded on the given {@link ExecutorService}.
+	 * A request for a plane, that is being loaded in advance, waits for this
+	 * load, the plane is never loaded twice.
+	 *
+	 * @param service {@link ExecutorService} used to load the planes, null
+	 *            disables loading in advance.
+	 * @param depth Number of planes to load in advance.
+	 * @return this cache.
+	 */
+	public synchronized VirtualStackCache setReadAhead( final ExecutorService service, final int depth )
+	{
+		this.readAheadService = service;
+		this.readAheadDepth = service == null ? 0 : depth;
+		return this;
+	}
+
+	/**
+	 * Starts loading the planes following the given index in the background,
+	 * if read ahead is enabled.
+	 *
+	 * @param size Number of planes of the image.
+	 */
+	void readAhead( final Object owner, final int index, final int size, final IntFunction< ? > loader )
+	{
+		final ExecutorService service;
+		final int depth;
+		synchronized ( this )
+		{
+			service = readAheadService;
+			depth = readAheadDepth;
+		}
+		if ( service == null )
+			return;
+		for ( int i = index + 1; i <= index + depth && i < size; i++ )
+			prefetch( service, new Key( owner, i ), i, loader );
+	}
+
+	/**
+	 * Returns the cached plane with the given index, or null if it is not
+	 * in the cache.
+	 */
+	@SuppressWarnings( "unchecked" )
+	synchronized < A > A getIfPresent( final Object owner, final int index )
+	{
+		expungeClearedReferences();
+		final Entry entry = entries.get( new Key( owner, index ) );
+		final Object value = entry == null ? null : entry.get();
+		if ( value != null )
+			hits++;
+		else
+			misses++;
+		return ( A ) value;
+	}
+
+	/**
+	 * Starts loading the plane with the given index on the given
+	 * {@link ExecutorService}, unless it is cached or being loaded already.
+	 */
+	void loadInBackground( final Object owner, final int index, final IntFunction< ? > loader, final ExecutorService service )
+	{
+		prefetch( service, new Key( owner, index ), index, loader );
+	}
+
+	private void prefetch( final ExecutorService service, final Key key, final int index, final IntFunction< ? > loader )
+	{
+		final FutureTask< Object > task;
+		synchronized ( this )
+		{
+			// NB: containsKey doesn't change the order of the access ordered map.
+			if ( entries.containsKey( key ) || loading.containsKey( key ) || evictedPlanes.containsKey( key ) )
+				return;
+			task = new FutureTask<>( () -> loader.apply( index ) );
+			loading.put( key, task );
+			prefetches++;
+		}
+		try
+		{
+			service.execute( () -> {
+				task.run();
+				try
+				{
+					writeBack( put( key, task.get() ) );
+				}
+				catch ( final InterruptedException | ExecutionException e )
+				{
+					// ignore, the error is reported to the requests waiting for the task
+				}
+				finally
+				{
+					synchronized ( this )
+					{
+						loading.remove( key );
+					}
+				}
+			} );
+		}
+		catch ( final RejectedExecutionException e )
+		{
+			synchronized ( this )
+			{
+				loading.remove( key );
+				prefetches--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the cached plane with the given index, or loads it. Concurrent
+	 * requests for the same plane wait for a single load.
+	 *
+	 * @param owner Image the plane belongs to, compared by identity.
+	 */
+	@SuppressWarnings( "unchecked" )
+	< A > A get( final Object owner, final int index, final IntFunction< A > loader )
+	{
+		final Key key = new Key( owner, index );
+		final FutureTask< Object > task;
+		final boolean load;
+		final Object reused;
+		final List< Map.Entry< Key, Object > > evicted = new ArrayList<>();
+		synchronized ( this )
+		{
+			expungeClearedReferences();
+			final Entry entry = entries.get( key );
+			final Object value = entry == null ? null : entry.get();
+			if ( value != null )
+			{
+				hits++;
+				return ( A ) value;
+			}
+			reused = reuseEvicted( key, evicted );
+			if ( reused != null )
+			{
+				hits++;
+				load = false;
+				task = null;
+			}
+			else
+			{
+				misses++;
+				final FutureTask< Object > pending = loading.get( key );
+				load = pending == null;
+				task = load ? new FutureTask<>( () -> loader.apply( index ) ) : pending;
+				if ( load )
+					loading.put( key, task );
+			}
+		}
+		if ( reused != null )
+		{
+			writeBack( evicted );
+			return ( A ) reused;
+		}
+		if ( load )
+			task.run();
+		try
+		{
+			final Object value = task.get();
+			if ( load )
+				writeBack( put( key, value ) );
+			return ( A ) value;
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+		finally
+		{
+			if ( load )
+				synchronized ( this )
+				{
+					loading.remove( key );
+				}
+		}
+	}
+
+	/**
+	 * Puts an evicted plane of a writable image back into the cache, if it is
+	 * still referenced, such that there is only one copy of the plane.
+	 * Returns the plane, or null.
+	 */
+	private synchronized Object reuseEvicted( final Key key, final List< Map.Entry< Key, Object > > evicted )
+	{
+		final EvictedPlaneReference reference = evictedPlanes.remove( key );
+		final Object value = reference == null ? null : reference.get();
+		if ( value != null )
+			evicted.addAll( put( key, value ) );
+		else if ( reference != null )
+			// NB: The plane is written back, before it is loaded again.
+			reference.writeBack.run();
+		return value;
+	}
+
+	/**
+	 * Replaces the cached plane with the given index.
+	 */
+	void set( final Object owner, final int index, final Object value )
+	{
+		writeBack( put( new Key( owner, index ), value ) );
+	}
+
+	/**
+	 * Returns true, if planes are cleared by the garbage collector, rather than
+	 * evicted by the cache.
+	 */
+	boolean usesSoftReferences()
+	{
+		return policy == Policy.SOFT_REFERENCES;
+	}
+
+	/**
+	 * Adds the plane to the cache, and returns the evicted planes, that need
+	 * to be written back. A plane, that exceeds the limit on its own, is not
+	 * cached, and only replaces the previous plane with the same key, the
+	 * other planes stay in the cache.
+	 */
+	private synchronized List< Map.Entry< Key, Object > > put( final Key key, final Object value )
+	{
+		final long size = sizeInBytes( value );
+		final List< Map.Entry< Key, Object > > evicted = new ArrayList<>();
+		evictedPlanes.remove( key );
+		if ( exceedsLimit( 1, size ) )
+		{
+			final Entry previous = entries.remove( key );
+			if ( previous != null )
+			{
+				bytes -= previous.bytes;
+				addWriteBack( evicted, key, previous.get() );
+			}
+			// NB: The plane is used without being cached, it is tracked like an evicted plane.
+			trackEvicted( key, value );
+			return evicted;
+		}
+		final Entry entry = policy == Policy.SOFT_REFERENCES
+				? new Entry( key, value, size, queue )
+				: new Entry( value, size );
+		final Entry previous = entries.put( key, entry );
+		if ( previous != null )
+			bytes -= previous.bytes;
+		bytes += size;
+		final Iterator< Map.Entry< Key, Entry > > iterator = entries.entrySet().iterator();
+		while ( iterator.hasNext() && exceedsLimit() )
+		{
+			final Map.Entry< Key, Entry > next = iterator.next();
+			bytes -= next.getValue().bytes;
+			addEvicted( evicted, next.getKey(), next.getValue().get() );
+			iterator.remove();
+			evictions++;
+		}
+		return evicted;
+	}
+
+	private static void addWriteBack( final List< Map.Entry< Key, Object > > planes, final Key key, final Object value )
+	{
+		if ( key.owner instanceof WriteBack && value != null )
+			planes.add( new AbstractMap.SimpleImmutableEntry<>( key, value ) );
+	}
+
+	/**
+	 * Adds an evicted plane to the planes, that need to be written back, and
+	 * keeps track of it, as long as it is referenced.
+	 */
+	private void addEvicted( final List< Map.Entry< Key, Object > > planes, final Key key, final Object value )
+	{
+		addWriteBack( planes, key, value );
+		trackEvicted( key, value );
+	}
+
+	private void trackEvicted( final Key key, final Object value )
+	{
+		if ( key.owner instanceof WriteBack && value != null )
+			evictedPlanes.put( key, new EvictedPlaneReference( key, value, ( ( WriteBack ) key.owner ).detach( key.index, value ), evictedQueue ) );
+	}
+
+	/**
+	 * Adds the evicted planes, that are still referenced, to the planes, that
+	 * need to be written back. The other evicted planes are written back
+	 * immediately.
+	 */
+	private void addEvictedWriteBacks( final List< Map.Entry< Key, Object > > planes )
+	{
+		expungeClearedReferences();
+		final Iterator< EvictedPlaneReference > iterator = evictedPlanes.values().iterator();
+		while ( iterator.hasNext() )
+		{
+			final EvictedPlaneReference reference = iterator.next();
+			final Object value = reference.get();
+			if ( value != null )
+				addWriteBack( planes, reference.key, value );
+			else
+			{
+				// NB: The reference is cleared, but not enqueued yet.
+				iterator.remove();
+				reference.writeBack.run();
+			}
+		}
+	}
+
+	/**
+	 * Writes the given planes back to their images. This happens outside of
+	 * the lock of the cache, such that other planes can be requested
+	 * meanwhile.
+	 */
+	private static void writeBack( final List< Map.Entry< Key, Object > > planes )
+	{
+		for ( final Map.Entry< Key, Object > plane : planes )
+			( ( WriteBack ) plane.getKey().owner ).writeBack( plane.getKey().index, plane.getValue() );
+	}
+
+	/**
+	 * Writes the modified planes of all writable images in the cache back to
+	 * the images, including evicted planes, that are still referenced. The
+	 * planes stay in the cache.
+	 */
+	public void flush()
+	{
+		final List< Map.Entry< Key, Object > > planes = new ArrayList<>();
+		synchronized ( this )
+		{
+			for ( final Map.Entry< Key, Entry > entry : entries.entrySet() )
+				addWriteBack( planes, entry.getKey(), entry.getValue().get() );
+			addEvictedWriteBacks( planes );
+		}
+		writeBack( planes );
+	}
+
+	private boolean exceedsLimit()
+	{
+		return exceedsLimit( entries.size(), bytes );
+	}
+
+	private boolean exceedsLimit( final long planes, final long planeBytes )
+	{
+		switch ( policy )
+		{
+		case COUNT:
+			return planes > limit;
+		case BYTES:
+			return planeBytes > limit;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the entries, whose soft references have been cleared by the
+	 * garbage collector, and the evicted planes, that were garbage collected.
+	 * The latter are written back, while the cache is locked, such that they
+	 * can't be loaded again before.
+	 */
+	private void expungeClearedReferences()
+	{
+		PlaneReference reference;
+		while ( ( reference = ( PlaneReference ) queue.poll() ) != null )
+		{
+			final Entry entry = entries.get( reference.key );
+			if ( entry != null && entry.reference == reference )
+			{
+				entries.remove( reference.key );
+				bytes -= entry.bytes;
+				evictions++;
+			}
+		}
+		EvictedPlaneReference evicted;
+		while ( ( evicted = ( EvictedPlaneReference ) evictedQueue.poll() ) != null )
+			if ( evictedPlanes.remove( evicted.key, evicted ) )
+				evicted.writeBack.run();
+	}
+
+	/**
+	 * Removes all planes from the cache. Modified planes of writable images
+	 * are written back. Planes of writable images, that are still referenced,
+	 * are tracked like evicted planes.
+	 */
+	public void clear()
+	{
+		final List< Map.Entry< Key, Object > > planes = new ArrayList<>();
+		synchronized ( this )
+		{
+			addEvictedWriteBacks( planes );
+			for ( final Map.Entry< Key, Entry > entry : entries.entrySet() )
+				addEvicted( planes, entry.getKey(), entry.getValue().get() );
+			entries.clear();
+			bytes = 0;
+		}
+		writeBack( planes );
+	}
+
+	/** Returns the number of requests, that were served from the cache. */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of planes, that were loaded in the background,
+	 * either in advance, or for a volatile image.
+	 */
+	public synchronized long getPrefetches()
+	{
+		return prefetches;
+	}
+
+	/**
+	 * Returns the number of requests, that required to load a plane, or to
+	 * wait for a plane loaded in advance.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of planes, that were evicted by the policy, or
+	 * cleared by the garbage collector.
+	 */
+	public synchronized long getEvictions()
+	{
+		expungeClearedReferences();
+		return evictions;
+	}
+
+	/** Returns the number of planes in the cache. */
+	public synchronized int getResidentPlanes()
+	{
+		expungeClearedReferences();
+		return entries.size();
+	}
+
+	/**
+	 * Returns the total size of the planes in the cache in bytes. For soft
+	 * references, planes cleared by the garbage collector are subtracted
+	 * with some delay.
+	 */
+	public synchronized long getResidentBytes()
+	{
+		expungeClearedReferences();
+		return bytes;
+	}
+
+	private static long sizeInBytes( final Object value )
+	{
+		if ( !( value instanceof ArrayDataAccess ) )
+			return 0;
+		final Object array = ( ( ArrayDataAccess< ? > ) value ).getCurrentStorageArray();
+		final Class< ? > type = array.getClass().getComponentType();
+		final int bytesPerElement = type == byte.class || type == boolean.class ? 1
+				: type == short.class || type == char.class ? 2
+				: type == long.class || type == double.class ? 8
+				: 4;
+		return ( long ) Array.getLength( array ) * bytesPerElement;
+	}
+
+	private static class Key
+	{
+		private final Object owner;
+
+		private final int index;
+
+		private Key( final Object owner, final int index )
+		{
+			this.owner = owner;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key other = ( Key ) obj;
+			return owner == other.owner && index == other.index;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * System.identityHashCode( owner ) + index;
+		}
+	}
+
+	private static class PlaneReference extends SoftReference< Object >
+	{
+		private final Key key;
+
+		private PlaneReference( final Key key, final Object value, final ReferenceQueue< Object > queue )
+		{
+			super( value, queue );
+			this.key = key;
+		}
+	}
+
+	private static class EvictedPlaneReference extends WeakReference< Object >
+	{
+		private final Key key;
+
+		/** Writes the plane back, after it was garbage collected. */
+		private final Runnable writeBack;
+
+		private EvictedPlaneReference( final Key key, final Object value, final Runnable writeBack, final ReferenceQueue< Object > queue )
+		{
+			super( value, queue );
+			this.key = key;
+			this.writeBack = writeBack;
+		}
+	}
+
+	/** Holds a plane either strongly, or by a soft reference. */
+	private static class Entry
+	{
+		private final Object value;
+
+		private final PlaneReference reference;
+
+		private final long bytes;
+
+		private Entry( final Object value, final long bytes )
+		{
+			this.value = value;
+			this.reference = null;
+			this.bytes = bytes;
+		}
+
+		private Entry( final Key key, final Object value, final long bytes, final ReferenceQueue< Object > queue )
+		{
+			this.value = null;
+			this.reference = new PlaneReference( key, value, queue );
+			this.bytes = bytes;
+		}
+
+		private Object get()
+		{
+			return reference == null ? value : reference.get();
+		}
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img;
+
+import net.imglib2.img.basictypeaccess.array.DirtyByteArray;
+import net.imglib2.img.basictypeaccess.array.DirtyFloatArray;
+import net.imglib2.img.basictypeaccess.array.DirtyIntArray;
+import net.imglib2.img.basictypeaccess.array.DirtyShortArray;
+
+/**
+ * Dirty array accesses for the writable images of {@link VirtualStackAdapter},
+ * that keep their dirty flag in a separate {@link Flag}. The
+ * {@link VirtualStackCache} keeps the flag and the storage array of an evicted
+ * plane, such that the plane can still be written back, after the access was
+ * garbage collected.
+ */
+final class WriteTrackingArrays
+{
+	private WriteTrackingArrays()
+	{
+		// prevent instantiation of utility class
+	}
+
+	/** Dirty flag of a plane, that can outlive the access of the plane. */
+	static final class Flag
+	{
+		private boolean dirty = false;
+
+		boolean isDirty()
+		{
+			return dirty;
+		}
+
+		void setDirty( final boolean dirty )
+		{
+			this.dirty = dirty;
+		}
+	}
+
+	/** An access, whose dirty flag is a {@link Flag}. */
+	interface Tracked
+	{
+		Flag getFlag();
+	}
+
+	static DirtyByteArray bytes( final Object array )
+	{
+		return new Bytes( ( byte[] ) array );
+	}
+
+	static DirtyShortArray shorts( final Object array )
+	{
+		return new Shorts( ( short[] ) array );
+	}
+
+	static DirtyFloatArray floats( final Object array )
+	{
+		return new Floats( ( float[] ) array );
+	}
+
+	static DirtyIntArray ints( final Object array )
+	{
+		return new Ints( ( int[] ) array );
+	}
+
+	private static class Bytes extends DirtyByteArray implements Tracked
+	{
+		private final Flag flag = new Flag();
+
+		private Bytes( final byte[] data )
+		{
+			super( data );
+		}
+
+		@Override
+		public void setValue( final int index, final byte value )
+		{
+			super.setValue( index, value );
+			flag.dirty = true;
+		}
+
+		@Override
+		public boolean isDirty()
+		{
+			return flag.dirty;
+		}
+
+		@Override
+		public void setDirty()
+		{
+			flag.dirty = true;
+		}
+
+		@Override
+		public void setDirty( final boolean dirty )
+		{
+			flag.dirty = dirty;
+		}
+
+		@Override
+		public Flag getFlag()
+		{
+			return flag;
+		}
+	}
+
+	private static class Shorts extends DirtyShortArray implements Tracked
+	{
+		private final Flag flag = new Flag();
+
+		private Shorts( final short[] data )
+		{
+			super( data );
+		}
+
+		@Override
+		public void setValue( final int index, final short value )
+		{
+			super.setValue( index, value );
+			flag.dirty = true;
+		}
+
+		@Override
+		public boolean isDirty()
+		{
+			return flag.dirty;
+		}
+
+		@Override
+		public void setDirty()
+		{
+			flag.dirty = true;
+		}
+
+		@Override
+		public void setDirty( final boolean dirty )
+		{
+			flag.dirty = dirty;
+		}
+
+		@Override
+		public Flag getFlag()
+		{
+			return flag;
+		}
+	}
+
+	private static class Floats extends DirtyFloatArray implements Tracked
+	{
+		private final Flag flag = new Flag();
+
+		private Floats( final float[] data )
+		{
+			super( data );
+		}
+
+		@Override
+		public void setValue( final int index, final float value )
+		{
+			super.setValue( index, value );
+			flag.dirty = true;
+		}
+
+		@Override
+		public boolean isDirty()
+		{
+			return flag.dirty;
+		}
+
+		@Override
+		public void setDirty()
+		{
+			flag.dirty = true;
+		}
+
+		@Override
+		public void setDirty( final boolean dirty )
+		{
+			flag.dirty = dirty;
+		}
+
+		@Override
+		public Flag getFlag()
+		{
+			return flag;
+		}
+	}
+
+	private static class Ints extends DirtyIntArray implements Tracked
+	{
+		private final Flag flag = new Flag();
+
+		private Ints( final int[] data )
+		{
+			super( data );
+		}
+
+		@Override
+		public void setValue( final int index, final int value )
+		{
+			super.setValue( index, value );
+			flag.dirty = true;
+		}
+
+		@Override
+		public boolean isDirty()
+		{
+			return flag.dirty;
+		}
+
+		@Override
+		public void setDirty()
+		{
+			flag.dirty = true;
+		}
+
+		@Override
+		public void setDirty( final boolean dirty )
+		{
+			flag.dirty = dirty;
+		}
+
+		@Override
+		public Flag getFlag()
+		{
+			return flag;
+		}
+	}
+}
@@ -36,6 +36,15 @@ package net.imglib2.img.display.imagej;
 
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.stream.IntStream;
 
@@ -51,6 +60,7 @@ import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 /**
@@ -78,6 +88,15 @@ public abstract class AbstractVirtualStack extends VirtualStack
 
 	private double min = 0.0, max = 1.0;
 
+	/** Number of histogram bins of the per plane statistics. */
+	private static final int STATISTICS_BINS = 256;
+
+	private PlanePrefetcher prefetcher = null;
+
+	private volatile Map< Integer, IntensityStatistics > statistics = null;
+
+	private volatile PlaneBufferPool bufferPool = null;
+
 	public AbstractVirtualStack( final int width, final int height, final int size, final int bitDepth )
 	{
 		super( 10, 10, null, "" );
@@ -96,20 +115,221 @@ public abstract class AbstractVirtualStack extends VirtualStack
 		this.max = max;
 	}
 
+	/**
+	 * Enables or disables the computation of planes in advance.
+	 * <p>
+	 * If enabled, the stack detects if the planes are requested in sequence,
+	 * for example while playing a time series, or while dragging the slider.
+	 * The next planes in the direction of navigation are then computed on the
+	 * given {@link ExecutorService}. Steps along the channel, Z and time axes
+	 * of a hyperstack are detected, see {@link #getPlaneStrides()}.
+	 *
+	 * @param service {@link ExecutorService} used to compute the planes, null
+	 *            disables prefetching.
+	 * @param depth Number of planes that are computed in advance.
+	 */
+	public void setPrefetching( final ExecutorService service, final int depth )
+	{
+		if ( prefetcher != null )
+			prefetcher.invalidateAll();
+		prefetcher = service == null ? null : new PlanePrefetcher( this::getPixelsZeroBasedIndex, service, depth );
+	}
+
+	/**
+	 * Sets the {@link PlaneBufferPool}, that provides the arrays for the planes
+	 * computed by this stack. Arrays are returned to the pool by
+	 * {@link #release(ImageProcessor)}. Null disables pooling.
+	 */
+	public void setBufferPool( final PlaneBufferPool pool )
+	{
+		this.bufferPool = pool;
+	}
+
+	/** Returns the {@link PlaneBufferPool}, or null if pooling is disabled. */
+	public PlaneBufferPool getBufferPool()
+	{
+		return bufferPool;
+	}
+
+	/**
+	 * Returns the pixels of a processor, that was returned by
+	 * {@link #getProcessor(int)}, to the {@link PlaneBufferPool}. Call this
+	 * once ImageJ has replaced the processor, the processor must not be used
+	 * afterwards. Does nothing if pooling is disabled, or if the pixels
+	 * weren't taken from the pool, for example because they are returned
+	 * without copying.
+	 */
+	public void release( final ImageProcessor processor )
+	{
+		final PlaneBufferPool pool = bufferPool;
+		if ( pool != null && processor != null )
+			pool.release( processor.getPixels() );
+	}
+
+	/**
+	 * Returns an array for the pixels of a plane, taken from the
+	 * {@link PlaneBufferPool} if pooling is enabled. The content of the array
+	 * is undefined. Subclasses should use this method for arrays returned by
+	 * {@link #getPixelsZeroBasedIndex}, that aren't referenced otherwise.
+	 */
+	protected Object allocatePixels( final Class< ? > componentType )
+	{
+		final PlaneBufferPool pool = bufferPool;
+		final int length = width * height;
+		return pool != null ? pool.acquire( componentType, length ) : Array.newInstance( componentType, length );
+	}
+
+	/**
+	 * Returns a copy of the given pixels, in an array allocated by
+	 * {@link #allocatePixels(Class)}.
+	 */
+	protected Object copyPixels( final Object pixels )
+	{
+		final Object copy = allocatePixels( pixels.getClass().getComponentType() );
+		System.arraycopy( pixels, 0, copy, 0, Array.getLength( pixels ) );
+		return copy;
+	}
+
+	/**
+	 * Returns the distances between plane indices, that correspond to a step
+	 * along one of the higher dimensions of the stack. The prefetcher treats
+	 * steps of these sizes as sequential navigation.
+	 * <p>
+	 * The default implementation returns { 1 }. Stacks with multiple higher
+	 * dimensions, should override this method.
+	 */
+	protected int[] getPlaneStrides()
+	{
+		return new int[] { 1 };
+	}
+
+	/**
+	 * Enables or disables caching of per plane statistics.
+	 * <p>
+	 * If enabled, minimum, maximum and a histogram of each plane are computed
+	 * as a by-product, when the plane is requested by {@link #getPixels} for
+	 * the first time. The statistics are discarded, when the plane is changed
+	 * by {@link #setPixels} or {@link #setVoxels}. Changes made to arrays, that
+	 * are returned without copying, are not detected.
+	 * <p>
+	 * Caching is disabled by default. It costs an extra pass over each plane,
+	 * and the statistics of all requested planes are kept until caching is
+	 * disabled. Enabling it again keeps the statistics already collected.
+	 *
+	 * @see #getStatistics(int)
+	 * @see #getStackStatistics()
+	 */
+	public synchronized void setStatisticsCaching( final boolean enabled )
+	{
+		if ( !enabled )
+			statistics = null;
+		else if ( statistics == null )
+			statistics = new ConcurrentHashMap<>();
+	}
+
+	/** True if per plane statistics are cached. */
+	public boolean isStatisticsCaching()
+	{
+		return statistics != null;
+	}
+
+	/**
+	 * Returns minimum, maximum and a histogram of the specified plane. Cached
+	 * statistics are returned if available, otherwise the plane is requested
+	 * by {@link #getPixels}. Returns null for RGB stacks.
+	 */
+	public IntensityStatistics getStatistics( final int n )
+	{
+		final Map< Integer, IntensityStatistics > cache = statistics;
+		final int index = toZeroBasedIndex( n );
+		final IntensityStatistics cached = cache == null ? null : cache.get( index );
+		if ( cached != null )
+			return cached;
+		return cacheStatistics( n, getPixels( n ) );
+	}
+
+	/**
+	 * Returns the statistics of the entire stack, merged from the statistics
+	 * of the individual planes, see {@link #getStatistics(int)}. Returns null
+	 * for RGB stacks.
+	 */
+	public IntensityStatistics getStackStatistics()
+	{
+		final List< IntensityStatistics > planes = new ArrayList<>();
+		for ( int n = 1; n <= size; n++ )
+		{
+			final IntensityStatistics plane = getStatistics( n );
+			if ( plane == null )
+				return null;
+			planes.add( plane );
+		}
+		return IntensityStatistics.merge( planes, 4 * STATISTICS_BINS );
+	}
+
+	/**
+	 * Returns the statistics of the given pixels of the specified plane.
+	 * The statistics are cached, if caching is enabled and the plane is not
+	 * cached yet.
+	 */
+	IntensityStatistics cacheStatistics( final int n, final Object pixels )
+	{
+		final Map< Integer, IntensityStatistics > cache = statistics;
+		final int index = toZeroBasedIndex( n );
+		final IntensityStatistics cached = cache == null ? null : cache.get( index );
+		if ( cached != null )
+			return cached;
+		final IntensityStatistics computed = IntensityStatistics.of( pixels, STATISTICS_BINS );
+		if ( cache != null && computed != null )
+			cache.putIfAbsent( index, computed );
+		return computed;
+	}
+
 	@Override
 	public final Object getPixels( int n )
 	{
-		return getPixelsZeroBasedIndex( toZeroBasedIndex( n ) );
+		final int index = toZeroBasedIndex( n );
+		final PlanePrefetcher p = prefetcher;
+		final Object pixels = p != null
+				? p.getPixels( index, offset, offset + size, getPlaneStrides() )
+				: getPixelsZeroBasedIndex( index );
+		if ( statistics != null )
+			cacheStatistics( n, pixels );
+		return pixels;
 	}
 
 	@Override
 	public final void setPixels( final Object pixels, final int n )
 	{
 		if( isWritable() )
-			setPixelsZeroBasedIndex( toZeroBasedIndex( n ), pixels );
+		{
+			final int index = toZeroBasedIndex( n );
+			setPixelsZeroBasedIndex( index, pixels );
+			invalidate( index );
+		}
+	}
+
+	/**
+	 * Discards everything, that has been computed from the given plane:
+	 * prefetched pixels, cached statistics, and whatever is discarded by
+	 * {@link #planeModified(int)}. Subclasses call this, when the content of
+	 * the plane changed without {@link #setPixels}.
+	 */
+	protected final void invalidate( final int index )
+	{
+		final PlanePrefetcher p = prefetcher;
+		if ( p != null )
+			p.invalidate( index );
+		final Map< Integer, IntensityStatistics > cache = statistics;
+		if ( cache != null )
+			cache.remove( index );
+		planeModified( index );
 	}
 
-	private int toZeroBasedIndex( int n )
+	/**
+	 * Converts the one based index used by {@link VirtualStack} to the zero
+	 * based index, used by the methods of this class.
+	 */
+	protected final int toZeroBasedIndex( int n )
 	{
 		return ( n - 1 ) + offset;
 	}
@@ -130,6 +350,23 @@ public abstract class AbstractVirtualStack extends VirtualStack
 	 */
 	protected abstract Object getPixelsZeroBasedIndex( int index );
 
+	/**
+	 * This method is used internally by {@link AbstractVirtualStack} to implement {@link #getProcessor}.
+	 * <p>
+	 * Returns the pixels of the specified XY-plane, if they are not yet
+	 * complete, or null to use {@link #getPixelsZeroBasedIndex}. Incomplete
+	 * planes are only displayed, they are never returned by
+	 * {@link #getPixels}, used by {@link #getVoxels} or {@link #setVoxels}, or
+	 * cached, prefetched or included in the statistics. The default
+	 * implementation returns null.
+	 *
+	 * @param index Zero based index of the plane. (Warning {@link VirtualStack#getPixels(int)} uses one base indices).
+	 */
+	protected Object getIncompletePixelsZeroBasedIndex( int index )
+	{
+		return null;
+	}
+
 	/**
 	 * This method is used internally by {@link AbstractVirtualStack} to implement {@link #setPixels}.
 	 * <p>
@@ -141,6 +378,18 @@ public abstract class AbstractVirtualStack extends VirtualStack
 	 */
 	protected abstract void setPixelsZeroBasedIndex( int index, Object pixels );
 
+	/**
+	 * This method is called after the pixels of the specified XY-plane have
+	 * been changed by {@link #setPixels} or {@link #setVoxels}. Subclasses that
+	 * keep copies of planes, should override this method to discard them.
+	 *
+	 * @param index Zero based index of the plane. (Warning {@link VirtualStack#getPixels(int)} uses one base indices).
+	 */
+	protected void planeModified( int index )
+	{
+		// do nothing
+	}
+
 	/**
 	 * This method is used internally by {@link AbstractVirtualStack} to implement {@link #getVoxels} and {@link #setVoxels}.
 	 * <p>
@@ -159,8 +408,8 @@ public abstract class AbstractVirtualStack extends VirtualStack
 	@Override
 	public ImageProcessor getProcessor( final int n )
 	{
-
-		final Object pixels = getPixels( n );
+		final Object incomplete = getIncompletePixelsZeroBasedIndex( toZeroBasedIndex( n ) );
+		final Object pixels = incomplete != null ? incomplete : getPixels( n );
 		final ImageProcessor processor = ImageProcessorUtils.createImageProcessor( pixels, width, height, colorModel );
 		if ( min != Double.MAX_VALUE && !( processor instanceof ColorProcessor ) )
 			processor.setMinAndMax( min, max );
@@ -215,12 +464,29 @@ public abstract class AbstractVirtualStack extends VirtualStack
 	}
 
 	/**
-	 * Currently not implemented
+	 * Writes pending changes of the specified plane to the underlying image.
+	 * Returns 0 on success, and -1 if the stack is not writable, or doesn't
+	 * support this operation.
+	 *
+	 * @see #saveChangesZeroBasedIndex(int)
 	 */
 	@Override
 	public int saveChanges( final int n )
 	{
-		return -1;
+		return isWritable() && saveChangesZeroBasedIndex( toZeroBasedIndex( n ) ) ? 0 : -1;
+	}
+
+	/**
+	 * This method is used internally by {@link AbstractVirtualStack} to implement {@link #saveChanges}.
+	 * <p>
+	 * Writes pending changes of the specified XY-plane. Returns false if the
+	 * operation is not supported, which is the default.
+	 *
+	 * @param index Zero based index of the plane. (Warning {@link VirtualStack#getPixels(int)} uses one base indices).
+	 */
+	protected boolean saveChangesZeroBasedIndex( int index )
+	{
+		return false;
 	}
 
 	@Override
@@ -422,11 +688,92 @@ public abstract class AbstractVirtualStack extends VirtualStack
 		checkBounds( x0, y0, z0, w, h, d );
 		if( ! setVoxel )
 			voxels = checkResultArray( w, h, d, voxels );
-		BiConsumer< Object, FloatType > action = ( BiConsumer< Object, FloatType > ) voxelAccessAction( optionalChannel, setVoxel );
-		loopOverVoxels( x0, y0, z0, w, h, d, voxels, action );
+		final VoxelAccess access = new VoxelAccess( x0, y0, z0, w, h, d, voxels, optionalChannel, setVoxel );
+		final ExecutorService service = getExecutorService();
+		if ( service == null || isWorkerThread() || !access.isParallelizable() )
+			access.run( 0, d, 0, h );
+		else
+			invokeAll( service, access.tasks() );
+		if ( setVoxel )
+			for ( int z = z0 + offset; z < z0 + offset + d; z++ )
+				invalidate( z );
 		return voxels;
 	}
 
+	/**
+	 * Returns the {@link ExecutorService} used by {@link #getVoxels} to read
+	 * multiple planes, or multiple bands of rows in parallel. The default
+	 * implementation returns null, which means that voxels are read in the
+	 * calling thread.
+	 * <p>
+	 * The methods {@link #getPixelsZeroBasedIndex} and
+	 * {@link #getSliceZeroBasedIndex} must be thread safe, if an
+	 * {@link ExecutorService} is returned.
+	 */
+	protected ExecutorService getExecutorService()
+	{
+		return null;
+	}
+
+	private static final ThreadLocal< Boolean > workerThread = new ThreadLocal<>();
+
+	/**
+	 * Returns true if the current thread executes a task, that was submitted
+	 * by this class to an {@link ExecutorService}. Code running in such a
+	 * thread must not wait for other tasks submitted to the same
+	 * {@link ExecutorService}, because this might cause a deadlock.
+	 */
+	protected static boolean isWorkerThread()
+	{
+		return workerThread.get() != null;
+	}
+
+	/**
+	 * Wraps the given task, such that {@link #isWorkerThread()} returns true
+	 * while it is executed.
+	 */
+	static < V > Callable< V > workerTask( final Callable< V > task )
+	{
+		return () -> {
+			workerThread.set( Boolean.TRUE );
+			try
+			{
+				return task.call();
+			}
+			finally
+			{
+				workerThread.remove();
+			}
+		};
+	}
+
+	/**
+	 * Runs the given tasks on the {@link ExecutorService} and waits for them
+	 * to finish. An exception thrown by a task is rethrown.
+	 */
+	static void invokeAll( final ExecutorService service, final List< Callable< Void > > tasks )
+	{
+		try
+		{
+			for ( final Future< Void > future : service.invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+	}
+
 	private void checkBounds( int x0, int y0, int z0, int w, int h, int d )
 	{
 		boolean inBounds = (x0 >= 0) && (x0 + w <= width) && (y0 >= 0) && (y0 + h <= height) && (z0 >= 0) && (z0 + d <= size);
@@ -441,19 +788,217 @@ public abstract class AbstractVirtualStack extends VirtualStack
 		return voxels;
 	}
 
-	private void loopOverVoxels( int x0, int y0, int z0, int w, int h, int d, float[] voxels, BiConsumer< Object, FloatType > action )
+	/**
+	 * Returns true if {@link #getVoxels} and {@link #setVoxels} should access
+	 * a region of the given size, by copying rows between the primitive
+	 * arrays returned by {@link #getPixelsZeroBasedIndex} and the voxel
+	 * buffer. Setting voxels this way, writes the entire plane back with
+	 * {@link #setPixelsZeroBasedIndex}.
+	 * <p>
+	 * If false is returned, the voxels are accessed one by one, using
+	 * {@link #getSliceZeroBasedIndex}. Subclasses should return false, if
+	 * computing the full plane is expensive compared to the requested region,
+	 * or if writing back the full plane would lose precision.
+	 * <p>
+	 * The default implementation returns true.
+	 *
+	 * @param w Width of the requested region.
+	 * @param h Height of the requested region.
+	 * @param setVoxels True if voxels are set, false if voxels are read.
+	 */
+	protected boolean useBulkVoxelAccess( int w, int h, boolean setVoxels )
+	{
+		return true;
+	}
+
+	private static void getRow( Object pixels, int pixelsOffset, float[] voxels, int voxelsOffset, int length, Integer channel )
+	{
+		if ( pixels instanceof byte[] )
+		{
+			final byte[] bytes = ( byte[] ) pixels;
+			for ( int i = 0; i < length; i++ )
+				voxels[ voxelsOffset + i ] = bytes[ pixelsOffset + i ] & 0xff;
+		}
+		else if ( pixels instanceof short[] )
+		{
+			final short[] shorts = ( short[] ) pixels;
+			for ( int i = 0; i < length; i++ )
+				voxels[ voxelsOffset + i ] = shorts[ pixelsOffset + i ] & 0xffff;
+		}
+		else if ( pixels instanceof float[] )
+			System.arraycopy( pixels, pixelsOffset, voxels, voxelsOffset, length );
+		else if ( pixels instanceof int[] )
+		{
+			final int[] ints = ( int[] ) pixels;
+			if ( channel == null )
+				for ( int i = 0; i < length; i++ )
+					voxels[ voxelsOffset + i ] = ints[ pixelsOffset + i ];
+			else
+			{
+				final int shift = 8 * ( 2 - channel );
+				for ( int i = 0; i < length; i++ )
+					voxels[ voxelsOffset + i ] = ( ints[ pixelsOffset + i ] >> shift ) & 0xff;
+			}
+		}
+		else
+			throw new IllegalArgumentException( "unsupported pixel type" );
+	}
+
+	private static void setRow( Object pixels, int pixelsOffset, float[] voxels, int voxelsOffset, int length, Integer channel )
 	{
-		FinalInterval interval = Intervals.createMinSize( x0, y0, w, h );
-		Cursor< FloatType > output = ArrayImgs.floats( voxels, w, h, d ).cursor();
-		for ( int z = z0 + offset; z < z0 + offset + d; z++ )
+		if ( pixels instanceof byte[] )
+		{
+			final byte[] bytes = ( byte[] ) pixels;
+			for ( int i = 0; i < length; i++ )
+				bytes[ pixelsOffset + i ] = ( byte ) Util.round( voxels[ voxelsOffset + i ] );
+		}
+		else if ( pixels instanceof short[] )
 		{
-			Cursor< ? > cursor = Views.flatIterable( Views.interval( getSliceZeroBasedIndex( z ), interval ) ).cursor();
-			while ( cursor.hasNext() ) {
-				action.accept( cursor.next(), output.next() );
+			final short[] shorts = ( short[] ) pixels;
+			for ( int i = 0; i < length; i++ )
+				shorts[ pixelsOffset + i ] = ( short ) Util.round( voxels[ voxelsOffset + i ] );
+		}
+		else if ( pixels instanceof float[] )
+			System.arraycopy( voxels, voxelsOffset, pixels, pixelsOffset, length );
+		else if ( pixels instanceof int[] )
+		{
+			final int[] ints = ( int[] ) pixels;
+			if ( channel == null )
+				for ( int i = 0; i < length; i++ )
+					ints[ pixelsOffset + i ] = ( int ) voxels[ voxelsOffset + i ];
+			else
+			{
+				final int shift = 8 * ( 2 - channel );
+				final int mask = ~( 0xff << shift );
+				for ( int i = 0; i < length; i++ )
+					ints[ pixelsOffset + i ] = ints[ pixelsOffset + i ] & mask | ( ( ( int ) voxels[ voxelsOffset + i ] ) & 0xff ) << shift;
 			}
 		}
+		else
+			throw new IllegalArgumentException( "unsupported pixel type" );
 	}
 
+	/**
+	 * A request of {@link #getVoxels} or {@link #setVoxels}, that can be
+	 * split into blocks of planes and rows, which are processed
+	 * independently. Each block reads or writes a disjoint part of the voxel
+	 * buffer.
+	 */
+	private class VoxelAccess
+	{
+		private final int x0, y0, z0, w, h, d;
+
+		private final float[] voxels;
+
+		private final Integer channel;
+
+		private final boolean setVoxel;
+
+		private final boolean bulk;
+
+		private final BiConsumer< Object, FloatType > action;
+
+		private VoxelAccess( int x0, int y0, int z0, int w, int h, int d, float[] voxels, Integer channel, boolean setVoxel )
+		{
+			this.x0 = x0;
+			this.y0 = y0;
+			this.z0 = z0;
+			this.w = w;
+			this.h = h;
+			this.d = d;
+			this.voxels = voxels;
+			this.channel = channel;
+			this.setVoxel = setVoxel;
+			this.bulk = useBulkVoxelAccess( w, h, setVoxel );
+			this.action = bulk ? null : ( BiConsumer< Object, FloatType > ) voxelAccessAction( channel, setVoxel );
+		}
+
+		/**
+		 * Only reading voxels is done in parallel. Neighboring pixels of
+		 * packed types, like BitType, share the same storage, and can
+		 * therefore not be written concurrently. A single plane, that is
+		 * accessed in bulk, is not split either. It's better computed in the
+		 * calling thread, where {@link #getPixelsZeroBasedIndex} might use
+		 * multiple threads itself.
+		 */
+		private boolean isParallelizable()
+		{
+			return !setVoxel && ( d > 1 || ( !bulk && h > 1 ) );
+		}
+
+		/**
+		 * Splits the request into one task per plane. A request for a single
+		 * plane is split into bands of rows.
+		 */
+		private List< Callable< Void > > tasks()
+		{
+			final List< Callable< Void > > tasks = new ArrayList<>();
+			if ( d > 1 )
+				for ( int z = 0; z < d; z++ )
+					tasks.add( task( z, z + 1, 0, h ) );
+			else
+			{
+				final int bands = Math.min( h, Runtime.getRuntime().availableProcessors() );
+				for ( int i = 0; i < bands; i++ )
+					tasks.add( task( 0, d, h * i / bands, h * ( i + 1 ) / bands ) );
+			}
+			return tasks;
+		}
+
+		private Callable< Void > task( int zMin, int zMax, int yMin, int yMax )
+		{
+			return workerTask( () -> {
+				run( zMin, zMax, yMin, yMax );
+				return null;
+			} );
+		}
+
+		/**
+		 * Processes the planes zMin to zMax - 1 and rows yMin to yMax - 1,
+		 * relative to the requested region.
+		 */
+		private void run( int zMin, int zMax, int yMin, int yMax )
+		{
+			if ( bulk )
+				copyRows( zMin, zMax );
+			else
+				loopOverVoxels( zMin, zMax, yMin, yMax );
+		}
+
+		private void copyRows( int zMin, int zMax )
+		{
+			for ( int z = zMin; z < zMax; z++ )
+			{
+				final int index = z0 + offset + z;
+				final Object pixels = getPixelsZeroBasedIndex( index );
+				for ( int y = 0; y < h; y++ )
+				{
+					final int pixelsOffset = ( y0 + y ) * width + x0;
+					final int voxelsOffset = ( z * h + y ) * w;
+					if ( setVoxel )
+						setRow( pixels, pixelsOffset, voxels, voxelsOffset, w, channel );
+					else
+						getRow( pixels, pixelsOffset, voxels, voxelsOffset, w, channel );
+				}
+				if ( setVoxel )
+					setPixelsZeroBasedIndex( index, pixels );
+			}
+		}
+
+		private void loopOverVoxels( int zMin, int zMax, int yMin, int yMax )
+		{
+			FinalInterval interval = Intervals.createMinSize( x0, y0 + yMin, w, yMax - yMin );
+			RandomAccessibleInterval< FloatType > buffer = ArrayImgs.floats( voxels, w, h, d );
+			for ( int z = zMin; z < zMax; z++ )
+			{
+				Cursor< ? > cursor = Views.flatIterable( Views.interval( getSliceZeroBasedIndex( z0 + offset + z ), interval ) ).cursor();
+				Cursor< FloatType > output = Views.flatIterable( Views.interval( buffer, Intervals.createMinSize( 0, yMin, z, w, yMax - yMin, 1 ) ) ).cursor();
+				while ( cursor.hasNext() ) {
+					action.accept( cursor.next(), output.next() );
+				}
+			}
+		}
+	}
 
 	private BiConsumer<?, FloatType> voxelAccessAction( Integer channel, boolean isSetVoxels )
 	{
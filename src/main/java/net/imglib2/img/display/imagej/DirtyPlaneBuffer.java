@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds planes, that have been changed but not yet written to the image.
+ * <p>
+ * Repeated changes to the same plane are coalesced, only the last version is
+ * written. If the total size of the buffered planes exceeds the byte budget,
+ * the least recently used planes are written. Reads of buffered planes must
+ * be served from the buffer, see {@link #get(int)}.
+ *
+ * @see ImageJVirtualStack#setWriteBack(long)
+ */
+class DirtyPlaneBuffer
+{
+	private final long maxBytes;
+
+	private final BiConsumer< Integer, Object > writer;
+
+	private final LinkedHashMap< Integer, Object > planes = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long bytes = 0;
+
+	/**
+	 * Writes are serialized per buffer, such that an older version of a plane
+	 * never overwrites a newer one.
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * @param maxBytes Maximal total size of the buffered planes in bytes.
+	 * @param writer Writes a plane, given the zero based index and the
+	 *            pixels, to the image.
+	 */
+	DirtyPlaneBuffer( final long maxBytes, final BiConsumer< Integer, Object > writer )
+	{
+		if ( maxBytes < 0 )
+			throw new IllegalArgumentException( "The size of the buffer must not be negative." );
+		this.maxBytes = maxBytes;
+		this.writer = writer;
+	}
+
+	/**
+	 * Returns the buffered pixels of the given plane, or null if the plane is
+	 * not dirty. The returned array is owned by the buffer, and must not be
+	 * modified.
+	 */
+	synchronized Object get( final int index )
+	{
+		return planes.get( index );
+	}
+
+	/**
+	 * Buffers the pixels of the given plane. The buffer takes ownership of
+	 * the array. Least recently used planes are written, until the buffer
+	 * fits into the byte budget.
+	 */
+	void put( final int index, final Object pixels )
+	{
+		synchronized ( this )
+		{
+			remove( index );
+			planes.put( index, pixels );
+			bytes += PlaneCache.sizeInBytes( pixels );
+		}
+		while ( true )
+		{
+			final int eldest;
+			final Object eldestPixels;
+			synchronized ( this )
+			{
+				if ( bytes <= maxBytes )
+					return;
+				final Map.Entry< Integer, Object > entry = planes.entrySet().iterator().next();
+				eldest = entry.getKey();
+				eldestPixels = entry.getValue();
+			}
+			synchronized ( writeLock )
+			{
+				// NB: A concurrent flush might have written the plane, and a
+				// newer version might have been put since. Writing the older
+				// version would overwrite the newer one.
+				if ( get( eldest ) == eldestPixels )
+					write( eldest, eldestPixels );
+			}
+		}
+	}
+
+	/**
+	 * Writes the given plane, if it's dirty.
+	 */
+	void flush( final int index )
+	{
+		synchronized ( writeLock )
+		{
+			final Object pixels = get( index );
+			if ( pixels != null )
+				write( index, pixels );
+		}
+	}
+
+	/**
+	 * Writes all dirty planes. Distinct planes are written in parallel, if an
+	 * {@link ExecutorService} is given.
+	 */
+	void flushAll( final ExecutorService service )
+	{
+		synchronized ( writeLock )
+		{
+			final List< Map.Entry< Integer, Object > > dirty;
+			synchronized ( this )
+			{
+				dirty = new ArrayList<>();
+				for ( final Map.Entry< Integer, Object > entry : planes.entrySet() )
+					dirty.add( new AbstractMap.SimpleImmutableEntry<>( entry ) );
+			}
+			if ( service == null || AbstractVirtualStack.isWorkerThread() || dirty.size() < 2 )
+			{
+				for ( final Map.Entry< Integer, Object > entry : dirty )
+					write( entry.getKey(), entry.getValue() );
+				return;
+			}
+			final List< Callable< Void > > tasks = new ArrayList<>();
+			for ( final Map.Entry< Integer, Object > entry : dirty )
+				tasks.add( AbstractVirtualStack.workerTask( () -> {
+					write( entry.getKey(), entry.getValue() );
+					return null;
+				} ) );
+			AbstractVirtualStack.invokeAll( service, tasks );
+		}
+	}
+
+	/**
+	 * Returns true if the given plane has changes, that are not yet written.
+	 */
+	synchronized boolean isDirty( final int index )
+	{
+		return planes.containsKey( index );
+	}
+
+	/**
+	 * Returns the number of dirty planes.
+	 */
+	synchronized int size()
+	{
+		return planes.size();
+	}
+
+	/**
+	 * Returns the total size of the dirty planes in bytes.
+	 */
+	synchronized long getSizeInBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * Writes the plane, and removes it from the buffer, unless it has been
+	 * changed again in the meantime.
+	 */
+	private void write( final int index, final Object pixels )
+	{
+		writer.accept( index, pixels );
+		synchronized ( this )
+		{
+			if ( planes.get( index ) == pixels )
+				remove( index );
+		}
+	}
+
+	private void remove( final int index )
+	{
+		final Object removed = planes.remove( index );
+		if ( removed != null )
+			bytes -= PlaneCache.sizeInBytes( removed );
+	}
+}
@@ -34,12 +34,20 @@
 
 package net.imglib2.img.display.imagej;
 
+import java.awt.EventQueue;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 
 import net.imagej.ImgPlus;
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.converter.ComplexPowerGLogFloatConverter;
 import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
@@ -58,9 +66,12 @@ import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Cast;
+import net.imglib2.util.Intervals;
 
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.VirtualStack;
+import ij.process.ImageProcessor;
 
 /**
  * Provides static convenience methods to facilitate interacting with ImageJ
@@ -89,6 +100,9 @@ public class ImageJFunctions
 {
 	final static AtomicInteger ai = new AtomicInteger();
 
+	/** Largest sample used to refine an estimated display range. */
+	private final static long MAX_SAMPLES = 1 << 24;
+
 	public static < T extends NumericType< T > & NativeType< T > > Img< T > wrap( final ImagePlus imp )
 	{
 		return ImagePlusAdapter.wrap( imp );
@@ -212,34 +226,65 @@ public class ImageJFunctions
 	 * or ImagePlus.COLOR_RGB) is inferred from the generic type of the input
 	 * {@link RandomAccessibleInterval}.
 	 */
-	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	public static < T extends NumericType< T > > ImagePlus wrap( final RandomAccessibleInterval< T > img, final String title,
 			final ExecutorService service )
 	{
-		ImagePlus target;
+		final ImageJVirtualStack< ? > stack = createStack( img, service );
+		return stack == null ? null : wrapStack( img, stack, title );
+	}
+
+	/**
+	 * Creates the {@link ImageJVirtualStack}, that
+	 * {@link #wrap(RandomAccessibleInterval, String, ExecutorService)} wraps
+	 * into an {@link ImagePlus}. The stack can be configured, before the
+	 * {@link ImagePlus} computes the first plane. Returns null if the type is
+	 * not supported.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	static < T extends NumericType< T > > ImageJVirtualStack< ? > createStack( final RandomAccessibleInterval< T > img,
+			final ExecutorService service )
+	{
+		final ImageJVirtualStack< ? > stack;
 		final T t = img.getType();
 
 		if ( t instanceof ARGBType )
-			target = wrapRGB( Cast.unchecked( img ), title, service );
+			stack = ImageJVirtualStackARGB.wrap( Cast.unchecked( img ) );
 		else if ( t instanceof UnsignedByteType )
-			target = wrapUnsignedByte( Cast.unchecked( img ), title, service );
+			stack = ImageJVirtualStackUnsignedByte.wrap( Cast.unchecked( img ) );
 		else if ( t instanceof BitType )
-			target = wrapBit( Cast.unchecked( img ), title, service );
+		{
+			final RandomAccessibleInterval< BitType > bits = Cast.unchecked( img );
+			stack = ImageJVirtualStackUnsignedByte.wrap( Converters.convert( bits, new RealUnsignedByteConverter< BitType >( 0, 1 ), new UnsignedByteType() ) );
+		}
 		else if ( t instanceof IntegerType )
-			target = wrapUnsignedShort( Cast.unchecked( img ), title, service );
+			stack = ImageJVirtualStackUnsignedShort.wrap( Cast.unchecked( img ) );
 		else if ( t instanceof RealType )
-			target = wrapFloat( Cast.unchecked( img ), title, service );
+			stack = ImageJVirtualStackFloat.wrap( Cast.unchecked( img ) );
 		else if ( t instanceof ComplexType )
-			target = wrapFloat( Cast.unchecked( img ), new ComplexPowerGLogFloatConverter(), title, service );
+			return new ImageJVirtualStackFloat( img, new ComplexPowerGLogFloatConverter(), service );
 		else
 		{
 			System.out.println( "Do not know how to display Type " + t.getClass().getSimpleName() );
-			target = null;
+			return null;
 		}
+		stack.setExecutorService( service );
+		return stack;
+	}
+
+	/**
+	 * Wraps a stack created by
+	 * {@link #createStack(RandomAccessibleInterval, ExecutorService)} into an
+	 * {@link ImagePlus}.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static < T extends NumericType< T > > ImagePlus wrapStack( final RandomAccessibleInterval< T > img, final ImageJVirtualStack< ? > stack,
+			final String title )
+	{
+		final ImagePlus target = makeImagePlus( img, stack, title );
 
 		// Retrieve and set calibration if we can. ImgPlus has calibration and
 		// axis types
-		if ( null != target && img instanceof ImgPlus )
+		if ( img instanceof ImgPlus )
 		{
 
 			final ImgPlus< T > imgplus = ( ImgPlus< T > ) img;
@@ -255,6 +300,31 @@ public class ImageJFunctions
 		return wrap( img, title, null );
 	}
 
+	/**
+	 * Same as {@link #wrap(RandomAccessibleInterval, String, ExecutorService)},
+	 * but recently displayed planes are kept in a {@link PlaneCache}. Going
+	 * back to a cached plane costs a copy of the plane, instead of computing
+	 * it again from the given image.
+	 *
+	 * @param planeCacheBytes
+	 *            Maximal total size of the cached planes in bytes.
+	 * @see ImageJVirtualStack#getPlaneCache()
+	 */
+	public static < T extends NumericType< T > > ImagePlus wrap( final RandomAccessibleInterval< T > img, final String title,
+			final ExecutorService service, final long planeCacheBytes )
+	{
+		final ImagePlus target = wrap( img, title, service );
+		if ( null != target && target.getStack() instanceof ImageJVirtualStack )
+			( ( ImageJVirtualStack< ? > ) target.getStack() ).setPlaneCache( new PlaneCache( planeCacheBytes ) );
+		return target;
+	}
+
+	public static < T extends NumericType< T > > ImagePlus wrap( final RandomAccessibleInterval< T > img, final String title,
+			final long planeCacheBytes )
+	{
+		return wrap( img, title, null, planeCacheBytes );
+	}
+
 	public static < T extends NumericType< T > > ImagePlus show( final RandomAccessibleInterval< T > img, final String title,
 			final ExecutorService service )
 	{
@@ -262,7 +332,7 @@ public class ImageJFunctions
 		if ( null == imp ) { return null; }
 
 		imp.show();
-		imp.getProcessor().resetMinAndMax();
+		resetDisplayRange( imp );
 		imp.updateAndRepaintWindow();
 
 		return imp;
@@ -273,6 +343,110 @@ public class ImageJFunctions
 		return show( img, title, null );
 	}
 
+	/**
+	 * Same as {@link #show(RandomAccessibleInterval, String, ExecutorService)},
+	 * but if the image is a {@link CachedCellImg}, for example one returned
+	 * by {@link net.imglib2.img.io.Load#lazyStack}, planes are displayed
+	 * before all their cells are loaded. Missing cells are shown as zero,
+	 * loaded on the given fetchers, and the displayed plane is repainted
+	 * when they arrived.
+	 *
+	 * @see ImageJVirtualStack#setProgressiveLoading(ExecutorService,
+	 *      java.util.function.IntConsumer)
+	 */
+	public static < T extends NumericType< T > > ImagePlus showProgressive( final RandomAccessibleInterval< T > img, final String title,
+			final ExecutorService service, final ExecutorService fetchers )
+	{
+		final ImagePlus imp = wrapProgressive( img, title, service, fetchers );
+		if ( null == imp ) { return null; }
+
+		imp.show();
+		resetDisplayRange( imp );
+		imp.updateAndRepaintWindow();
+
+		return imp;
+	}
+
+	/**
+	 * Same as {@link #wrap(RandomAccessibleInterval, String, ExecutorService)},
+	 * but progressive loading is enabled, before the {@link ImagePlus}
+	 * computes the first plane, such that creating the {@link ImagePlus}
+	 * doesn't wait for cells.
+	 */
+	static < T extends NumericType< T > > ImagePlus wrapProgressive( final RandomAccessibleInterval< T > img, final String title,
+			final ExecutorService service, final ExecutorService fetchers )
+	{
+		final ImageJVirtualStack< ? > stack = createStack( img, service );
+		if ( null == stack ) { return null; }
+
+		final ProgressiveRepaint repaint = new ProgressiveRepaint( stack );
+		stack.setProgressiveLoading( fetchers, repaint );
+		final ImagePlus imp = wrapStack( img, stack, title );
+		repaint.setImagePlus( imp );
+		return imp;
+	}
+
+	/**
+	 * Replaces the pixels of a plane, that was loaded progressively, if it is
+	 * displayed. The display range is reset once, because the initial range
+	 * might have been computed from an incomplete plane.
+	 * <p>
+	 * Planes, that are loaded before the {@link ImagePlus} is set, are
+	 * repainted, when it is set. The repaints run on the event dispatch
+	 * thread, in the order they are requested.
+	 */
+	private static class ProgressiveRepaint implements IntConsumer
+	{
+		private final ImageStack stack;
+
+		private final AtomicReference< ImagePlus > imp = new AtomicReference<>();
+
+		private final AtomicBoolean resetRange = new AtomicBoolean( true );
+
+		/**
+		 * Planes loaded before the {@link ImagePlus} was set, only accessed on
+		 * the event dispatch thread.
+		 */
+		private final Set< Integer > early = new HashSet<>();
+
+		private ProgressiveRepaint( final ImageStack stack )
+		{
+			this.stack = stack;
+		}
+
+		private void setImagePlus( final ImagePlus imp )
+		{
+			this.imp.set( imp );
+			EventQueue.invokeLater( () -> {
+				for ( final int n : early )
+					repaint( n );
+				early.clear();
+			} );
+		}
+
+		@Override
+		public void accept( final int n )
+		{
+			EventQueue.invokeLater( () -> repaint( n ) );
+		}
+
+		private void repaint( final int n )
+		{
+			final ImagePlus imp = this.imp.get();
+			if ( imp == null )
+			{
+				early.add( n );
+				return;
+			}
+			if ( imp.getCurrentSlice() != n || imp.getImageStack() != stack )
+				return;
+			imp.getProcessor().setPixels( stack.getProcessor( n ).getPixels() );
+			if ( resetRange.getAndSet( false ) )
+				resetDisplayRange( imp );
+			imp.updateAndDraw();
+		}
+	}
+
 	/**
 	 * Create a single channel 32-bit float {@link ImagePlus} from a
 	 * {@link RandomAccessibleInterval} using a custom {@link Converter}.
@@ -366,17 +540,120 @@ public class ImageJFunctions
 	/**
 	 * Show a {@link RandomAccessibleInterval} of {@link RealType} pixels as
 	 * single channel 32-bit float using a default {@link Converter}.
+	 * <p>
+	 * The display range is set to the range of the displayed plane. Use
+	 * {@link #setDisplayRange} to set it to the range of the entire image, or
+	 * {@link #estimateDisplayRange} to estimate it from a sample in bounded
+	 * time.
 	 */
 	public static < T extends RealType< T > > ImagePlus showFloat( final RandomAccessibleInterval< T > img, final String title,
 			final ExecutorService service )
 	{
 		final ImagePlus imp = wrapFloat( img, title, service );
 		imp.show();
-		imp.getProcessor().resetMinAndMax();
+		resetDisplayRange( imp );
 		imp.updateAndRepaintWindow();
 		return imp;
 	}
 
+	/**
+	 * Same as {@link ImageProcessor#resetMinAndMax()}, but for 16 and 32 bit
+	 * virtual stacks with statistics caching enabled, the cached minimum and
+	 * maximum of the current plane are used, see
+	 * {@link AbstractVirtualStack#setStatisticsCaching(boolean)}.
+	 */
+	private static void resetDisplayRange( final ImagePlus imp )
+	{
+		final ImageStack stack = imp.getImageStack();
+		final ImageProcessor processor = imp.getProcessor();
+		if ( ( imp.getBitDepth() == 16 || imp.getBitDepth() == 32 ) && stack instanceof AbstractVirtualStack
+				&& ( ( AbstractVirtualStack ) stack ).isStatisticsCaching() )
+		{
+			final AbstractVirtualStack virtualStack = ( AbstractVirtualStack ) stack;
+			final IntensityStatistics statistics = virtualStack.cacheStatistics( imp.getCurrentSlice(), processor.getPixels() );
+			if ( statistics != null && statistics.getCount() > 0 )
+			{
+				imp.setDisplayRange( statistics.getMin(), statistics.getMax() );
+				return;
+			}
+		}
+		processor.resetMinAndMax();
+	}
+
+	/**
+	 * Sets the display range of the {@link ImagePlus}, such that the given
+	 * percentage of the pixels of the image is saturated, see
+	 * {@link IntensityStatistics#getSaturatedRange(double)}. A percentage of
+	 * zero sets the display range to minimum and maximum of the image.
+	 *
+	 * @param service Used to compute the statistics in parallel, may be null.
+	 */
+	public static < T extends RealType< T > > void setDisplayRange( final ImagePlus imp, final RandomAccessibleInterval< T > img,
+			final double saturatedPercent, final ExecutorService service )
+	{
+		try
+		{
+			applyDisplayRange( imp, IntensityStatistics.compute( img, service, saturatedPercent > 0 ? 1024 : 0 ), saturatedPercent );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sets the display range of the {@link ImagePlus} and its stack to an
+	 * estimate, that is computed from a sample of at most maxSamples pixels,
+	 * see {@link IntensityStatistics#estimate(RandomAccessibleInterval, int, int)}.
+	 * This takes bounded time, even for huge {@link CachedCellImg}s.
+	 * <p>
+	 * If an {@link ExecutorService} is given, the estimate is refined in the
+	 * background, with four times more samples in each round. The refined
+	 * display range is applied on the event dispatch thread. Cached cells
+	 * are preferred by the estimate, so later rounds benefit from cells, that
+	 * have been loaded in the meantime.
+	 *
+	 * @param saturatedPercent Percentage of saturated pixels, see
+	 *            {@link IntensityStatistics#getSaturatedRange(double)}.
+	 * @param refinements Number of rounds of refinement.
+	 * @return {@link Future} of the refinement, that can be used to cancel
+	 *         it, or null if there is no refinement.
+	 */
+	public static < T extends RealType< T > > Future< ? > estimateDisplayRange( final ImagePlus imp, final RandomAccessibleInterval< T > img,
+			final int maxSamples, final double saturatedPercent, final ExecutorService service, final int refinements )
+	{
+		applyDisplayRange( imp, IntensityStatistics.estimate( img, maxSamples, 1024 ), saturatedPercent );
+		if ( service == null || refinements <= 0 )
+			return null;
+		final long size = Intervals.numElements( img );
+		return service.submit( () -> {
+			long samples = maxSamples;
+			for ( int i = 0; i < refinements && samples < size && !Thread.currentThread().isInterrupted(); i++ )
+			{
+				samples = Math.min( samples * 4, MAX_SAMPLES );
+				final IntensityStatistics statistics = IntensityStatistics.estimate( img, ( int ) samples, 1024 );
+				// NB: The display range is changed on the event dispatch thread.
+				EventQueue.invokeLater( () -> {
+					applyDisplayRange( imp, statistics, saturatedPercent );
+					imp.updateAndDraw();
+				} );
+			}
+		} );
+	}
+
+	private static void applyDisplayRange( final ImagePlus imp, final IntensityStatistics statistics, final double saturatedPercent )
+	{
+		if ( statistics.getCount() == 0 )
+			return;
+		final double[] range = saturatedPercent > 0
+				? statistics.getSaturatedRange( saturatedPercent )
+				: new double[] { statistics.getMin(), statistics.getMax() };
+		final ImageStack stack = imp.getImageStack();
+		if ( stack instanceof AbstractVirtualStack )
+			( ( AbstractVirtualStack ) stack ).setMinAndMax( range[ 0 ], range[ 1 ] );
+		imp.setDisplayRange( range[ 0 ], range[ 1 ] );
+	}
+
 	public static < T extends RealType< T > > ImagePlus showFloat( final RandomAccessibleInterval< T > img, final String title )
 	{
 		return showFloat( img, title, null );
@@ -649,7 +926,7 @@ public class ImageJFunctions
 	{
 		final ImagePlus imp = wrapUnsignedShort( img, title, service );
 		imp.show();
-		imp.getProcessor().resetMinAndMax();
+		resetDisplayRange( imp );
 		imp.updateAndRepaintWindow();
 		return imp;
 	}
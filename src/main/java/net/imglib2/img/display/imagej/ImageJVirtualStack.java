@@ -38,19 +38,32 @@ import ij.ImageStack;
 import ij.VirtualStack;
 import ij.process.ImageProcessor;
 import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.Positionable;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
+import net.imglib2.converter.TypeIdentity;
 import net.imglib2.display.projector.AbstractProjector2D;
+import net.imglib2.display.projector.ForkJoinIterableIntervalProjector2D;
 import net.imglib2.display.projector.IterableIntervalProjector2D;
 import net.imglib2.display.projector.MultithreadedIterableIntervalProjector2D;
+import net.imglib2.display.projector.RowCopyIterableIntervalProjector2D;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImg;
-import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.type.NativeType;
+import net.imglib2.type.NativeTypeFactory;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
@@ -58,7 +71,11 @@ import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
+import java.lang.reflect.Array;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 
@@ -78,6 +95,25 @@ import java.util.stream.LongStream;
  * wraps around a copy of the pixels of the image plane too. So methods like
  * {@link ImageProcessor#set(int, int, int)} will not change the content of
  * wrapped {@link RandomAccessibleInterval}.
+ * <p>
+ * There is one exception to this rule: If the stack is writable, and the
+ * wrapped image is an {@link ArrayImg}, {@link PlanarImg} or
+ * {@link AbstractCellImg}, whose planes are stored in individual primitive
+ * arrays, then {@link #getPixels(int)} returns these arrays without copying.
+ * Writing to the returned array will then change the image immediately. Planes
+ * that are stored in larger arrays are copied with {@link System#arraycopy}
+ * instead of being projected pixel by pixel.
+ * <p>
+ * Every call to {@link #getPixels(int)} computes the requested plane from the
+ * wrapped {@link RandomAccessibleInterval}. To avoid recomputing planes that
+ * are requested repeatedly, a {@link PlaneCache} can be set with
+ * {@link #setPlaneCache(PlaneCache)}.
+ * <p>
+ * Every call to {@link #setPixels} writes the plane to the wrapped
+ * {@link RandomAccessibleInterval} immediately. Plugins, that change a plane
+ * repeatedly, might benefit from {@link #setWriteBack(long)}, which buffers
+ * changed planes until {@link #saveChanges(int)} or {@link #flush()} is
+ * called.
  */
 public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVirtualStack
 {
@@ -92,6 +128,18 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 
 	protected ExecutorService service;
 
+	private PlaneCache planeCache;
+
+	private final NativePlaneAccess nativePlanes;
+
+	private DirtyPlaneBuffer dirtyPlanes;
+
+	private LookupTableConversion< ? > lookupTable;
+
+	private final PlaneCells planeCells;
+
+	private ProgressiveCellLoader progressive;
+
 	/* old constructor -> non-multithreaded projector */
 	protected < S > ImageJVirtualStack( final RandomAccessibleInterval< S > source, final Converter< ? super S, T > converter,
 			final T type, final int bitDepth )
@@ -116,6 +164,8 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 		this.source = zeroMin( source );
 		this.type = Util.getTypeFromInterval( source );
 		this.higherSourceDimensions = initHigherDimensions( source );
+		this.nativePlanes = NativePlaneAccess.create( this.source );
+		this.planeCells = PlaneCells.create( this.source );
 	}
 
 	private static int multiply( final long[] higherSourceDimensions )
@@ -140,6 +190,140 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 		this.service = service;
 	}
 
+	@Override
+	protected ExecutorService getExecutorService()
+	{
+		return service;
+	}
+
+	/**
+	 * Sets the {@link PlaneCache} that is used to store recently computed
+	 * planes. Null disables caching, which is the default.
+	 * <p>
+	 * Cached planes are discarded when they are changed by
+	 * {@link #setPixels} or {@link #setVoxels}. Changes made directly to the
+	 * wrapped {@link RandomAccessibleInterval} are not detected, call
+	 * {@link PlaneCache#invalidateAll()} in this case.
+	 */
+	public void setPlaneCache( final PlaneCache planeCache )
+	{
+		this.planeCache = planeCache;
+	}
+
+	/**
+	 * Returns the {@link PlaneCache} used by this stack, or null if planes are
+	 * not cached.
+	 */
+	public PlaneCache getPlaneCache()
+	{
+		return planeCache;
+	}
+
+	/**
+	 * Enables or disables progressive loading.
+	 * <p>
+	 * If the wrapped image is a {@link CachedCellImg}, for example one
+	 * created by {@link net.imglib2.img.io.Load#lazyStack}, computing a plane
+	 * usually blocks until all its cells are loaded. In progressive mode,
+	 * {@link #getProcessor(int)}, which ImageJ uses to display a plane,
+	 * returns immediately instead: Regions covered by cells, that are
+	 * already in the cache, are filled, the remaining pixels are zero. All
+	 * other methods, like {@link #getPixels(int)}, {@link #getVoxels} and
+	 * {@link #setVoxels}, still wait for the complete plane, such that
+	 * incomplete planes are never written back or measured. The missing
+	 * cells are loaded on the given
+	 * {@link ExecutorService}. When all of them arrived, the plane is
+	 * discarded from the {@link PlaneCache}, the prefetcher and the cached
+	 * statistics, and the listener is called with the one based index of the
+	 * plane. The listener typically repaints the {@link ij.ImagePlus}, see
+	 * {@link ImageJFunctions#showProgressive}. It is called on a thread of
+	 * the {@link ExecutorService}.
+	 * <p>
+	 * Progressive loading has no effect, if there is no {@link CachedCellImg}
+	 * behind the wrapped image, or if the stack is writable, because ImageJ
+	 * writes displayed planes back.
+	 *
+	 * @param fetchers {@link ExecutorService} that loads the missing cells.
+	 *            Null disables progressive loading, which is the default.
+	 * @param listener Called when a plane, that was returned incompletely,
+	 *            is complete.
+	 * @return True if progressive loading is enabled.
+	 */
+	public boolean setProgressiveLoading( final ExecutorService fetchers, final IntConsumer listener )
+	{
+		progressive = fetchers == null || planeCells == null || isWritable ? null : new ProgressiveCellLoader( planeCells, fetchers, index -> {
+			invalidate( index );
+			listener.accept( index + 1 );
+		} );
+		return progressive != null;
+	}
+
+	/**
+	 * Enables or disables write-back mode.
+	 * <p>
+	 * In write-back mode, planes changed by {@link #setPixels} are not
+	 * written to the wrapped {@link RandomAccessibleInterval} immediately.
+	 * They are buffered instead, and repeated changes to the same plane are
+	 * coalesced. The buffered planes are written, when {@link #saveChanges}
+	 * or {@link #flush()} is called, or when the total size of the buffered
+	 * planes exceeds the given number of bytes. In this case the least
+	 * recently used planes are written first. {@link #getPixels} always
+	 * returns the latest changes.
+	 * <p>
+	 * Planes, that are returned without copying (see class documentation),
+	 * are never buffered.
+	 *
+	 * @param maxDirtyBytes Maximal total size of the buffered planes in bytes.
+	 *            Zero disables write-back mode, and writes all buffered
+	 *            planes.
+	 */
+	public void setWriteBack( final long maxDirtyBytes )
+	{
+		flush();
+		dirtyPlanes = maxDirtyBytes == 0 ? null : new DirtyPlaneBuffer( maxDirtyBytes, this::writePixels );
+	}
+
+	/**
+	 * Writes all buffered planes to the wrapped
+	 * {@link RandomAccessibleInterval}. Distinct planes are written in
+	 * parallel, if an {@link ExecutorService} is set. This requires that
+	 * distinct planes of the wrapped image can be written concurrently.
+	 *
+	 * @see #setWriteBack(long)
+	 */
+	public void flush()
+	{
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		if ( buffer != null )
+			buffer.flushAll( service );
+	}
+
+	/**
+	 * Returns true if the specified plane has buffered changes, that are not
+	 * yet written to the wrapped {@link RandomAccessibleInterval}.
+	 *
+	 * @param n One based index of the plane, as in {@link #getPixels(int)}.
+	 */
+	public boolean isDirty( final int n )
+	{
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		return buffer != null && buffer.isDirty( toZeroBasedIndex( n ) );
+	}
+
+	/** Returns the number of planes with buffered changes. */
+	public int getDirtyPlaneCount()
+	{
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		return buffer == null ? 0 : buffer.size();
+	}
+
+	/** Returns the total size in bytes of the planes with buffered changes. */
+	public long getDirtyBytes()
+	{
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		return buffer == null ? 0 : buffer.getSizeInBytes();
+	}
+
 	/**
 	 * Set if the {@link ImageStack} is writable.
 	 * <p>
@@ -149,7 +333,8 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 	 * If writable, the pixels written to the image by the methods {@link #setPixels(Object, int)}
 	 * or {@link #setVoxels} will be copied to the wrapped {@link RandomAccessibleInterval}.
 	 * Please note: The {@link ImageProcessor} cannot be used to persistently change the image
-	 * content.
+	 * content, unless the planes are returned without copying, as described in the class
+	 * documentation.
 	 */
 	public void setWritable( final boolean writable )
 	{
@@ -165,22 +350,71 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 
 	private ArrayImg< T, ? > getSlice( final int index )
 	{
-		final int sizeX = ( int ) source.dimension( 0 );
-		final int sizeY = ( int ) source.dimension( 1 );
-		final ArrayImg< T, ? > img = new ArrayImgFactory<>( type ).create( new long[] { sizeX, sizeY } );
-		project( index, img, (i, o) -> o.set( i ) );
+		final ArrayImg< T, ? > img = wrapPixels( allocatePixels( componentType() ) );
+		project( index, img, new TypeIdentity<>() );
+		return img;
+	}
+
+	/**
+	 * Wraps the given array of the size of a plane into an {@link ArrayImg}
+	 * of type T.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private ArrayImg< T, ? > wrapPixels( final Object pixels )
+	{
+		final ArrayDataAccess< ? > access;
+		if ( pixels instanceof byte[] )
+			access = new ByteArray( ( byte[] ) pixels );
+		else if ( pixels instanceof short[] )
+			access = new ShortArray( ( short[] ) pixels );
+		else if ( pixels instanceof int[] )
+			access = new IntArray( ( int[] ) pixels );
+		else
+			access = new FloatArray( ( float[] ) pixels );
+		final ArrayImg img = new ArrayImg( access, new long[] { getWidth(), getHeight() }, type.getEntitiesPerPixel() );
+		img.setLinkedType( ( ( NativeTypeFactory ) type.getNativeTypeFactory() ).createLinkedType( img ) );
 		return img;
 	}
 
+	private Class< ? > componentType()
+	{
+		switch ( type.getNativeTypeFactory().getPrimitiveType() )
+		{
+		case BYTE:
+			return byte.class;
+		case SHORT:
+			return short.class;
+		case INT:
+			return int.class;
+		case FLOAT:
+			return float.class;
+		default:
+			throw new UnsupportedOperationException( "Unsupported pixel type: " + type.getClass().getSimpleName() );
+		}
+	}
+
 	private void project( int index, Img< T > img, Converter< T, T > converter )
 	{
-		final AbstractProjector2D projector = ( service == null )
-				? new IterableIntervalProjector2D<>( 0, 1, source, img, converter )
-				: new MultithreadedIterableIntervalProjector2D<>( 0, 1, source, img, converter, service );
+		final AbstractProjector2D projector = createProjector( source, img, converter );
 		setPosition( index, projector );
 		projector.map();
 	}
 
+	private < A, B > AbstractProjector2D createProjector( RandomAccessible< A > source, IterableInterval< B > img, Converter< ? super A, B > converter )
+	{
+		if ( service == null )
+			return new RowCopyIterableIntervalProjector2D<>( 0, 1, source, img, converter );
+		// NB: A ForkJoinPool can be used from its own worker threads, joining a
+		// task executes other tasks while waiting.
+		if ( service instanceof ForkJoinPool )
+			return new ForkJoinIterableIntervalProjector2D<>( 0, 1, source, img, converter, ( ForkJoinPool ) service );
+		// NB: Use a single threaded projector in worker threads, waiting for
+		// tasks of the same ExecutorService might deadlock otherwise.
+		if ( isWorkerThread() )
+			return new RowCopyIterableIntervalProjector2D<>( 0, 1, source, img, converter );
+		return new MultithreadedIterableIntervalProjector2D<>( 0, 1, source, img, converter, service );
+	}
+
 	private void setPosition( int index, Positionable projector )
 	{
 		if ( higherSourceDimensions.length > 0 )
@@ -195,12 +429,147 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 	@Override
 	protected Object getPixelsZeroBasedIndex( final int index )
 	{
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		final Object dirty = buffer == null ? null : buffer.get( index );
+		if ( dirty != null )
+			return copyPixels( dirty );
+		final NativePlaneAccess.Plane plane = getNativePlane( index );
+		if ( plane != null )
+			return plane.getPixels( !isWritable, this::allocatePixels );
+		final PlaneCache cache = planeCache;
+		if ( cache == null )
+			return computePixels( index );
+		// NB: The plane might be changed by setPixels, while it is computed.
+		final long generation = cache.getGeneration( index );
+		final Object cached = cache.get( index );
+		if ( cached != null )
+			return copyPixels( cached );
+		final Object pixels = computePixels( index );
+		cache.put( index, ImageProcessorUtils.copyPixels( pixels ), generation );
+		return pixels;
+	}
+
+	/**
+	 * In progressive mode, returns the plane with only the regions of loaded
+	 * cells filled, if some cells are still missing. Writable stacks never
+	 * return incomplete planes, because ImageJ writes displayed planes back.
+	 */
+	@Override
+	protected Object getIncompletePixelsZeroBasedIndex( final int index )
+	{
+		final ProgressiveCellLoader loader = progressive;
+		if ( loader == null || isWritable )
+			return null;
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		if ( buffer != null && buffer.get( index ) != null )
+			return null;
+		return computeAvailablePixels( index, loader );
+	}
+
+	private Object computePixels( final int index )
+	{
+		loadCells( index );
+		if ( lookupTable != null )
+			return computePixels( index, lookupTable );
 		final ArrayImg< T, ? > img = getSlice( index );
 		return ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
 	}
 
+	/**
+	 * Returns null if all cells of the plane are loaded. Otherwise returns
+	 * the plane with only the regions of loaded cells filled. The partial
+	 * plane is never cached, and is not taken from the {@link PlaneBufferPool}
+	 * because the remaining pixels must be zero.
+	 */
+	private Object computeAvailablePixels( final int index, final ProgressiveCellLoader loader )
+	{
+		final List< Interval > regions = loader.availableRegions( index, higherPosition( index ), getWidth(), getHeight() );
+		if ( regions == null )
+			return null;
+		final Object pixels = Array.newInstance( componentType(), getWidth() * getHeight() );
+		final ArrayImg< T, ? > img = wrapPixels( pixels );
+		for ( final Interval region : regions )
+		{
+			final AbstractProjector2D projector = new IterableIntervalProjector2D<>( 0, 1, source, Views.interval( img, region ), new TypeIdentity< T >() );
+			setPosition( index, projector );
+			projector.map();
+		}
+		return pixels;
+	}
+
+	/**
+	 * If the wrapped image is a {@link CachedCellImg}, the cells of the plane,
+	 * that are not yet cached, are loaded concurrently on the
+	 * {@link ExecutorService}. Otherwise the projection would load them one
+	 * after the other, in the order they are reached by the cursor.
+	 */
+	private void loadCells( final int index )
+	{
+		if ( planeCells == null || service == null || isWorkerThread() )
+			return;
+		try
+		{
+			planeCells.load( higherPosition( index ), getWidth(), getHeight(), service );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private long[] higherPosition( final int index )
+	{
+		final long[] position = new long[ higherSourceDimensions.length ];
+		if ( higherSourceDimensions.length > 0 )
+			IntervalIndexer.indexToPosition( index, higherSourceDimensions, position );
+		return position;
+	}
+
+	private < S extends IntegerType< S > & NativeType< S > > Object computePixels( final int index, final LookupTableConversion< S > lookupTable )
+	{
+		final Object pixels = allocatePixels( componentType() );
+		final ArrayImg< T, ? > img = wrapPixels( pixels );
+		final AbstractProjector2D projector = createProjector( lookupTable.getSource(), img, lookupTable.< T >converter() );
+		setPosition( index, projector );
+		if ( !lookupTable.convert( projector.positionAsLongArray(), pixels ) )
+			projector.map();
+		return pixels;
+	}
+
+	/**
+	 * Computes the planes from the given integer image with a lookup table,
+	 * instead of projecting the source. The integer image must have the
+	 * same size as the source, writing is still done through the source.
+	 */
+	void setLookupTable( final LookupTableConversion< ? > lookupTable )
+	{
+		this.lookupTable = lookupTable;
+	}
+
+	private NativePlaneAccess.Plane getNativePlane( final int index )
+	{
+		if ( nativePlanes == null )
+			return null;
+		return nativePlanes.getPlane( higherPosition( index ) );
+	}
+
 	@Override
 	protected void setPixelsZeroBasedIndex( final int index, final Object pixels )
+	{
+		final NativePlaneAccess.Plane plane = getNativePlane( index );
+		if ( plane != null )
+		{
+			plane.setPixels( pixels );
+			return;
+		}
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		if ( buffer != null )
+			buffer.put( index, ImageProcessorUtils.copyPixels( pixels ) );
+		else
+			writePixels( index, pixels );
+	}
+
+	private void writePixels( final int index, final Object pixels )
 	{
 		Img< T > img = ( Img< T > ) ImageProcessorUtils.createImg( pixels, getWidth(), getHeight() );
 		// NB: The use of Converter and Projector2D is a bit surprising.
@@ -208,9 +577,54 @@ public class ImageJVirtualStack< T extends NativeType< T > > extends AbstractVir
 		project( index, img, (o, i) -> o.set( i ) );
 	}
 
+	/**
+	 * Planes, that are stored in primitive arrays, are always accessed in
+	 * bulk. Otherwise, reading in bulk is only done if the region covers at
+	 * least a quarter of the plane. Writing in bulk is only done if the
+	 * region covers the entire plane, because writing back unchanged pixels
+	 * through a converter might lose precision.
+	 */
+	@Override
+	protected boolean useBulkVoxelAccess( final int w, final int h, final boolean setVoxels )
+	{
+		if ( nativePlanes != null )
+			return true;
+		if ( setVoxels )
+			return w == getWidth() && h == getHeight();
+		return 4L * w * h >= ( long ) getWidth() * getHeight();
+	}
+
+	@Override
+	protected int[] getPlaneStrides()
+	{
+		return higherSourceDimensions.length > 0 ? PlanePrefetcher.strides( higherSourceDimensions ) : super.getPlaneStrides();
+	}
+
+	@Override
+	protected boolean saveChangesZeroBasedIndex( final int index )
+	{
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		if ( buffer != null )
+			buffer.flush( index );
+		return true;
+	}
+
+	@Override
+	protected void planeModified( final int index )
+	{
+		final PlaneCache cache = planeCache;
+		if ( cache != null )
+			cache.invalidate( index );
+	}
+
 	@Override
 	protected RandomAccessibleInterval< T > getSliceZeroBasedIndex( int index )
 	{
+		// NB: The returned plane gives direct access to the source, buffered
+		// changes are written first.
+		final DirtyPlaneBuffer buffer = dirtyPlanes;
+		if ( buffer != null )
+			buffer.flush( index );
 		RandomAccessibleInterval< T > origin = source;
 		// Get the 2D plane represented by the virtual array
 		if ( higherSourceDimensions.length > 0 )
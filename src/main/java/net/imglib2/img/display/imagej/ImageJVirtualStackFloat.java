@@ -34,13 +34,7 @@
 
 package net.imglib2.img.display.imagej;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Sampler;
@@ -51,8 +45,6 @@ import net.imglib2.img.basictypeaccess.FloatAccess;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Util;
-import net.imglib2.view.RandomAccessibleIntervalCursor;
-import net.imglib2.view.Views;
 
 /**
  * TODO
@@ -91,126 +83,26 @@ public class ImageJVirtualStackFloat extends ImageJVirtualStack< FloatType >
 		setMinAndMax( 0, 1 );
 	}
 
+	/**
+	 * Sets the display range to minimum and maximum of the given image. The
+	 * image is processed in parallel, if an {@link ExecutorService} is set.
+	 * The display range is left unchanged, if the image contains no values,
+	 * or if the calling thread is interrupted.
+	 *
+	 * @see IntensityStatistics
+	 */
 	public < S > void setMinMax( final RandomAccessibleInterval< S > source, final Converter< S, FloatType > converter )
 	{
-		if ( service != null )
-		{
-			setMinMaxMT( source, converter );
-			return;
-		}
-
-		final RandomAccessibleIntervalCursor< S > cursor = new RandomAccessibleIntervalCursor<>(
-				Views.isZeroMin( source ) ? source : Views.zeroMin( source ) );
-		final FloatType t = new FloatType();
-
-		if ( cursor.hasNext() )
-		{
-			converter.convert( cursor.next(), t );
-
-			float min = t.get();
-			float max = min;
-
-			while ( cursor.hasNext() )
-			{
-				converter.convert( cursor.next(), t );
-				final float value = t.get();
-
-				if ( value < min )
-					min = value;
-
-				if ( value > max )
-					max = value;
-			}
-
-			setMinAndMax( min, max );
-		}
-	}
-
-	private < S > void setMinMaxMT( final RandomAccessibleInterval< S > source, final Converter< S, FloatType > converter )
-	{
-		final long nTasks = Runtime.getRuntime().availableProcessors();
-		long size = 1;
-		for ( int d = 0; d < source.numDimensions(); ++d )
-			size *= source.dimension( d );
-
-		final long portionSize = size / nTasks;
-
-		final List< Callable< Void > > tasks = new ArrayList<>();
-		final AtomicInteger ai = new AtomicInteger();
-
-		final ArrayList< Float > mins = new ArrayList<>( ( int ) nTasks );
-		final ArrayList< Float > maxs = new ArrayList<>( ( int ) nTasks );
-
-		for ( int t = 0; t < nTasks; ++t )
-		{
-			tasks.add( new Callable< Void >()
-			{
-
-				@Override
-				public Void call() throws Exception
-				{
-					final int i = ai.getAndIncrement();
-					final RandomAccessibleIntervalCursor< S > cursor = new RandomAccessibleIntervalCursor<>(
-							Views.isZeroMin( source ) ? source : Views.zeroMin( source ) );
-					final FloatType t = new FloatType();
-					long stepsTaken = 0;
-
-					cursor.jumpFwd( i * portionSize );
-
-					float min = Float.MAX_VALUE;
-					float max = -Float.MAX_VALUE;
-
-					// either map a portion or (for the last portion) go
-					// until the end
-					while ( ( i != nTasks - 1 && stepsTaken < portionSize ) || ( i == nTasks - 1 && cursor.hasNext() ) )
-					{
-						stepsTaken++;
-						converter.convert( cursor.next(), t );
-
-						final float value = t.get();
-
-						if ( value < min )
-							min = value;
-
-						if ( value > max )
-							max = value;
-
-					}
-
-					mins.add( min );
-					maxs.add( max );
-
-					return null;
-				}
-
-			} );
-		}
-
 		try
 		{
-			final List< Future< Void > > futures = service.invokeAll( tasks );
-			for ( final Future< Void > f : futures )
-				f.get();
+			final IntensityStatistics statistics = IntensityStatistics.compute( source, converter, service, 0 );
+			if ( statistics.getCount() > 0 )
+				setMinAndMax( statistics.getMin(), statistics.getMax() );
 		}
-		catch ( InterruptedException | ExecutionException e )
+		catch ( final InterruptedException e )
 		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
 		}
-
-		float min = Float.MAX_VALUE;
-		float max = -Float.MAX_VALUE;
-
-		for ( int t = 0; t < nTasks; t++ )
-		{
-			if ( min > mins.get( t ) )
-				min = mins.get( t );
-			if ( max < maxs.get( t ) )
-				max = maxs.get( t );
-		}
-
-		setMinAndMax( min, max );
-
 	}
 
 	private static class ToFloatSamplerConverter<S extends RealType<S>> implements SamplerConverter<S, FloatType>
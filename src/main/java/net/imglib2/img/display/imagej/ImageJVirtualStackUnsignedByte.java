@@ -54,9 +54,16 @@ import java.util.concurrent.ExecutorService;
  */
 public class ImageJVirtualStackUnsignedByte extends ImageJVirtualStack< UnsignedByteType >
 {
+	/**
+	 * Wraps the image, values are rounded and clamped to 0..255. Planes of
+	 * 8, 12 and 16 bit integer images are converted with a lookup table.
+	 */
 	public static < T extends RealType< ? > > ImageJVirtualStackUnsignedByte wrap( final RandomAccessibleInterval< T > source )
 	{
-		return new ImageJVirtualStackUnsignedByte( toUnsignedByteType( source ) );
+		final ImageJVirtualStackUnsignedByte result = new ImageJVirtualStackUnsignedByte( toUnsignedByteType( source ) );
+		if ( !( Util.getTypeFromInterval( source ) instanceof UnsignedByteType ) )
+			result.setLookupTable( LookupTableConversion.create( source, 8 ) );
+		return result;
 	}
 
 	private static < T extends RealType< ? > > RandomAccessibleInterval< UnsignedByteType > toUnsignedByteType( RandomAccessibleInterval< T > source )
@@ -54,10 +54,16 @@ import net.imglib2.util.Util;
  */
 public class ImageJVirtualStackUnsignedShort extends ImageJVirtualStack< UnsignedShortType >
 {
+	/**
+	 * Wraps the image, values are rounded and clamped to 0..65535. Planes of
+	 * 8, 12 and 16 bit integer images are converted with a lookup table.
+	 */
 	public static < T extends RealType< ? > > ImageJVirtualStackUnsignedShort wrap( final RandomAccessibleInterval< T > source )
 	{
 		final ImageJVirtualStackUnsignedShort result = new ImageJVirtualStackUnsignedShort( toUnsignedShort( source ) );
 		result.initMinMax( Util.getTypeFromInterval( source ) );
+		if ( !( Util.getTypeFromInterval( source ) instanceof UnsignedShortType ) )
+			result.setLookupTable( LookupTableConversion.create( source, 16 ) );
 		return result;
 	}
 
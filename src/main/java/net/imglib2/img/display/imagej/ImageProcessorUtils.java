@@ -114,4 +114,21 @@ public class ImageProcessorUtils
 			return ArrayImgs.floats( ( float[] ) pixels, width, height );
 		throw new IllegalArgumentException( "unsupported pixel type" );
 	}
+
+	/**
+	 * Returns a copy of the given pixel array, which must be byte[], short[],
+	 * int[] or float[].
+	 */
+	static Object copyPixels( final Object pixels )
+	{
+		if ( pixels instanceof byte[] )
+			return ( ( byte[] ) pixels ).clone();
+		if ( pixels instanceof short[] )
+			return ( ( short[] ) pixels ).clone();
+		if ( pixels instanceof int[] )
+			return ( ( int[] ) pixels ).clone();
+		if ( pixels instanceof float[] )
+			return ( ( float[] ) pixels ).clone();
+		throw new IllegalArgumentException( "unsupported pixel type" );
+	}
 }
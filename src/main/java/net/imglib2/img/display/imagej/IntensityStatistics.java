@@ -0,0 +1,677 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Minimum, maximum and optionally a histogram of the values of an image, as
+ * needed to set the display range of an {@link ij.ImagePlus}.
+ * <p>
+ * The image is partitioned into slabs along its last dimension. If it is an
+ * {@link AbstractCellImg}, the slabs are aligned to the cells, and each slab
+ * is processed cell by cell. The partitions are reduced independently, in parallel if an
+ * {@link ExecutorService} is given, and the partial results are merged
+ * afterwards. NaN and infinite values are ignored, as ImageJ does.
+ * <p>
+ * The computation can be cancelled by interrupting the calling thread, the
+ * pending partitions are cancelled then, and {@link InterruptedException} is
+ * thrown.
+ * <p>
+ * {@link AbstractVirtualStack} caches the statistics of individual planes,
+ * see {@link AbstractVirtualStack#setStatisticsCaching(boolean)}.
+ */
+public class IntensityStatistics
+{
+
+	/** Number of pixels between two checks for interruption. */
+	private static final long CHECK_INTERVAL = 64 * 1024;
+
+	/**
+	 * Minimal number of samples per cell, that {@link #estimate} takes, to
+	 * limit the number of cells to load.
+	 */
+	private static final int MIN_SAMPLES_PER_CELL = 256;
+
+	/** Number of partitions per thread, to balance the load. */
+	private static final int PARTITIONS_PER_THREAD = 4;
+
+	/**
+	 * Maximal number of cells of a stratum, that {@link #estimate} probes for
+	 * a cell in the cache.
+	 */
+	private static final int PROBES_PER_STRATUM = 8;
+
+	private final double min;
+
+	private final double max;
+
+	private final long count;
+
+	private final long[] histogram;
+
+	private IntensityStatistics( final double min, final double max, final long count, final long[] histogram )
+	{
+		this.min = min;
+		this.max = max;
+		this.count = count;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Computes minimum and maximum of the image.
+	 *
+	 * @param service Used to process partitions in parallel, null to compute
+	 *            in the calling thread.
+	 */
+	public static < T extends RealType< T > > IntensityStatistics compute( final RandomAccessibleInterval< T > source,
+			final ExecutorService service ) throws InterruptedException
+	{
+		return compute( source, ( i, o ) -> o.setReal( i.getRealDouble() ), service, 0 );
+	}
+
+	/**
+	 * Computes minimum and maximum of the image, and a histogram with the
+	 * given number of bins, such that {@link #getPercentile(double)} can be
+	 * used.
+	 *
+	 * @param service Used to process partitions in parallel, null to compute
+	 *            in the calling thread.
+	 */
+	public static < T extends RealType< T > > IntensityStatistics compute( final RandomAccessibleInterval< T > source,
+			final ExecutorService service, final int bins ) throws InterruptedException
+	{
+		return compute( source, ( i, o ) -> o.setReal( i.getRealDouble() ), service, bins );
+	}
+
+	/**
+	 * Computes minimum, maximum and, if bins is greater than zero, a
+	 * histogram of the values of the image, converted with the given
+	 * {@link Converter}. The histogram requires a second pass over the
+	 * image.
+	 *
+	 * @param service Used to process partitions in parallel, null to compute
+	 *            in the calling thread.
+	 */
+	public static < S > IntensityStatistics compute( final RandomAccessibleInterval< S > source,
+			final Converter< ? super S, FloatType > converter, final ExecutorService service, final int bins ) throws InterruptedException
+	{
+		final RandomAccessibleInterval< S > zeroMin = Views.isZeroMin( source ) ? source : Views.zeroMin( source );
+		final List< Interval > partitions = partition( zeroMin, service );
+		final CellGrid grid = zeroMin instanceof AbstractCellImg ? ( ( AbstractCellImg< ?, ?, ?, ? > ) zeroMin ).getCellGrid() : null;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		long count = 0;
+		for ( final Partial partial : reduce( partitions, slab -> minMax( zeroMin, converter, blocks( slab, grid ) ), service ) )
+		{
+			min = Math.min( min, partial.min );
+			max = Math.max( max, partial.max );
+			count += partial.count;
+		}
+		if ( count == 0 || bins <= 0 )
+			return new IntensityStatistics( count == 0 ? Double.NaN : min, count == 0 ? Double.NaN : max, count, null );
+		final double histogramMin = min;
+		final double histogramMax = max;
+		final long[] histogram = new long[ bins ];
+		for ( final long[] partial : reduce( partitions, slab -> histogram( zeroMin, converter, blocks( slab, grid ), histogramMin, histogramMax, bins ), service ) )
+			for ( int i = 0; i < bins; i++ )
+				histogram[ i ] += partial[ i ];
+		return new IntensityStatistics( min, max, count, histogram );
+	}
+
+	/**
+	 * Estimates minimum, maximum and a histogram from a sample of at most
+	 * maxSamples pixels, see
+	 * {@link #estimate(RandomAccessibleInterval, Converter, int, int)}.
+	 */
+	public static < T extends RealType< T > > IntensityStatistics estimate( final RandomAccessibleInterval< T > source,
+			final int maxSamples, final int bins )
+	{
+		return estimate( source, ( i, o ) -> o.setReal( i.getRealDouble() ), maxSamples, bins );
+	}
+
+	/**
+	 * Estimates minimum, maximum and a histogram from a stratified sample of
+	 * at most maxSamples pixels, such that the time needed is bounded, even
+	 * for huge images. The sampled pixels are spread evenly over the image,
+	 * with a random offset within each stratum.
+	 * <p>
+	 * If the image is an {@link AbstractCellImg}, only a limited number of
+	 * cells are sampled, one of each stratum of the cell grid. Cells of a
+	 * {@link CachedCellImg} that are already in the cache are preferred, a
+	 * few cells of each stratum are checked.
+	 * <p>
+	 * Minimum and maximum of the estimate are the extremes of the sample,
+	 * {@link #getCount()} is the sample size.
+	 */
+	public static < S > IntensityStatistics estimate( final RandomAccessibleInterval< S > source,
+			final Converter< ? super S, FloatType > converter, final int maxSamples, final int bins )
+	{
+		final RandomAccessibleInterval< S > zeroMin = Views.isZeroMin( source ) ? source : Views.zeroMin( source );
+		final Sample< S > sample = new Sample<>( zeroMin, converter, ( int ) Math.min( maxSamples, Intervals.numElements( zeroMin ) ) );
+		if ( zeroMin instanceof AbstractCellImg )
+			sampleCells( ( AbstractCellImg< ?, ?, ?, ? > ) zeroMin, sample );
+		else
+			sample.add( zeroMin, sample.values.length );
+		return of( Arrays.copyOf( sample.values, sample.size ), bins );
+	}
+
+	/**
+	 * Computes minimum, maximum and a histogram of the pixels of an image
+	 * plane. Returns null if the pixels are not a byte[] or short[], which
+	 * are treated as unsigned, or a float[].
+	 */
+	static IntensityStatistics of( final Object pixels, final int bins )
+	{
+		if ( pixels instanceof byte[] )
+			return of( ( byte[] ) pixels, bins );
+		if ( pixels instanceof short[] )
+			return of( ( short[] ) pixels, bins );
+		if ( pixels instanceof float[] )
+			return of( ( float[] ) pixels, bins );
+		return null;
+	}
+
+	private static IntensityStatistics of( final byte[] pixels, final int bins )
+	{
+		final long[] counts = new long[ 256 ];
+		for ( final byte value : pixels )
+			counts[ value & 0xff ]++;
+		return fromCounts( counts, pixels.length, bins );
+	}
+
+	private static IntensityStatistics of( final short[] pixels, final int bins )
+	{
+		final long[] counts = new long[ 65536 ];
+		for ( final short value : pixels )
+			counts[ value & 0xffff ]++;
+		return fromCounts( counts, pixels.length, bins );
+	}
+
+	/**
+	 * Creates the statistics of integer values, from the number of
+	 * occurrences of each value.
+	 */
+	private static IntensityStatistics fromCounts( final long[] counts, final long count, final int bins )
+	{
+		if ( count == 0 )
+			return new IntensityStatistics( Double.NaN, Double.NaN, 0, null );
+		int min = 0;
+		while ( counts[ min ] == 0 )
+			min++;
+		int max = counts.length - 1;
+		while ( counts[ max ] == 0 )
+			max--;
+		final long[] histogram = new long[ bins ];
+		final double scale = max > min ? bins / ( double ) ( max - min ) : 0;
+		for ( int value = min; value <= max; value++ )
+			histogram[ Math.min( ( int ) ( ( value - min ) * scale ), bins - 1 ) ] += counts[ value ];
+		return new IntensityStatistics( min, max, count, histogram );
+	}
+
+	private static IntensityStatistics of( final float[] pixels, final int bins )
+	{
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		long count = 0;
+		for ( final float value : pixels )
+		{
+			if ( !Float.isFinite( value ) )
+				continue;
+			if ( value < min )
+				min = value;
+			if ( value > max )
+				max = value;
+			count++;
+		}
+		if ( count == 0 )
+			return new IntensityStatistics( Double.NaN, Double.NaN, 0, null );
+		final long[] histogram = new long[ bins ];
+		final double scale = max > min ? bins / ( ( double ) max - min ) : 0;
+		for ( final float value : pixels )
+			if ( Float.isFinite( value ) )
+				histogram[ Math.min( ( int ) ( ( value - min ) * scale ), bins - 1 ) ]++;
+		return new IntensityStatistics( min, max, count, histogram );
+	}
+
+	/**
+	 * Merges the statistics of multiple image planes into a histogram with
+	 * the given number of bins. The counts of each bin are added to the bin
+	 * that contains its center, so the merged histogram is an approximation.
+	 */
+	static IntensityStatistics merge( final Collection< IntensityStatistics > statistics, final int bins )
+	{
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		long count = 0;
+		for ( final IntensityStatistics s : statistics )
+		{
+			if ( s.count == 0 )
+				continue;
+			min = Math.min( min, s.min );
+			max = Math.max( max, s.max );
+			count += s.count;
+		}
+		if ( count == 0 )
+			return new IntensityStatistics( Double.NaN, Double.NaN, 0, null );
+		final long[] histogram = new long[ bins ];
+		final double scale = max > min ? bins / ( max - min ) : 0;
+		for ( final IntensityStatistics s : statistics )
+		{
+			if ( s.count == 0 || s.histogram == null )
+				continue;
+			final double width = ( s.max - s.min ) / s.histogram.length;
+			for ( int i = 0; i < s.histogram.length; i++ )
+			{
+				final double center = s.min + ( i + 0.5 ) * width;
+				histogram[ Math.min( Math.max( ( int ) ( ( center - min ) * scale ), 0 ), bins - 1 ) ] += s.histogram[ i ];
+			}
+		}
+		return new IntensityStatistics( min, max, count, histogram );
+	}
+
+	/** Returns the minimum, or NaN if the image contains no values. */
+	public double getMin()
+	{
+		return min;
+	}
+
+	/** Returns the maximum, or NaN if the image contains no values. */
+	public double getMax()
+	{
+		return max;
+	}
+
+	/** Returns the number of values, that are neither NaN nor infinite. */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/** Returns true if a histogram was computed. */
+	public boolean hasHistogram()
+	{
+		return histogram != null;
+	}
+
+	/**
+	 * Returns an approximation of the given percentile, that is accurate up
+	 * to the width of a histogram bin.
+	 *
+	 * @param percent A value between 0 and 100.
+	 * @throws IllegalStateException If no histogram was computed.
+	 */
+	public double getPercentile( final double percent )
+	{
+		if ( histogram == null )
+			throw new IllegalStateException( "No histogram was computed." );
+		final long rank = ( long ) Math.ceil( Math.min( Math.max( percent, 0 ), 100 ) / 100 * count );
+		long sum = 0;
+		int bin = 0;
+		while ( bin < histogram.length - 1 && ( sum += histogram[ bin ] ) < rank )
+			bin++;
+		final double width = ( max - min ) / histogram.length;
+		return Math.min( Math.max( min + ( bin + 0.5 ) * width, min ), max );
+	}
+
+	/**
+	 * Returns a display range, such that the given percentage of the values
+	 * is saturated, half of it at either end. This is what ImageJ's "Enhance
+	 * Contrast" does.
+	 *
+	 * @throws IllegalStateException If no histogram was computed.
+	 */
+	public double[] getSaturatedRange( final double saturatedPercent )
+	{
+		return new double[] { getPercentile( saturatedPercent / 2 ), getPercentile( 100 - saturatedPercent / 2 ) };
+	}
+
+	private static List< Interval > partition( final RandomAccessibleInterval< ? > source, final ExecutorService service )
+	{
+		final int threads = service == null || AbstractVirtualStack.isWorkerThread() ? 1 : Runtime.getRuntime().availableProcessors();
+		final int numPartitions = threads * PARTITIONS_PER_THREAD;
+		return source instanceof AbstractCellImg
+				? cellAlignedSlabs( source, ( ( AbstractCellImg< ?, ?, ?, ? > ) source ).getCellGrid(), numPartitions )
+				: slabs( source, numPartitions );
+	}
+
+	/**
+	 * Splits the interval along its last dimension, that has more than one
+	 * cell, into approximately equally sized slabs, whose borders are borders
+	 * of cells.
+	 */
+	private static List< Interval > cellAlignedSlabs( final Interval interval, final CellGrid grid, final int numSlabs )
+	{
+		final List< Interval > slabs = new ArrayList<>();
+		final long[] gridDimensions = grid.getGridDimensions();
+		int d = gridDimensions.length - 1;
+		while ( d > 0 && gridDimensions[ d ] == 1 )
+			d--;
+		final long layers = gridDimensions[ d ];
+		final long step = ( layers + numSlabs - 1 ) / numSlabs;
+		final int cellSize = grid.cellDimension( d );
+		final long[] min = Intervals.minAsLongArray( interval );
+		final long[] max = Intervals.maxAsLongArray( interval );
+		for ( long start = 0; start < layers; start += step )
+		{
+			min[ d ] = interval.min( d ) + start * cellSize;
+			max[ d ] = Math.min( min[ d ] + step * cellSize - 1, interval.max( d ) );
+			slabs.add( new FinalInterval( min, max ) );
+		}
+		return slabs;
+	}
+
+	/**
+	 * Returns the cells of the grid, that lie in the given cell aligned slab,
+	 * or the slab itself, if grid is null.
+	 */
+	private static List< Interval > blocks( final Interval slab, final CellGrid grid )
+	{
+		if ( grid == null )
+			return Collections.singletonList( slab );
+		final int n = grid.numDimensions();
+		final long[] gridMin = new long[ n ];
+		final long[] gridDimensions = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			gridMin[ d ] = slab.min( d ) / grid.cellDimension( d );
+			gridDimensions[ d ] = slab.max( d ) / grid.cellDimension( d ) - gridMin[ d ] + 1;
+		}
+		final long numCells = Intervals.numElements( gridDimensions );
+		final List< Interval > cells = new ArrayList<>();
+		final long[] gridPosition = new long[ n ];
+		final long[] cellMin = new long[ n ];
+		final int[] cellDims = new int[ n ];
+		final long[] cellMax = new long[ n ];
+		for ( long i = 0; i < numCells; i++ )
+		{
+			IntervalIndexer.indexToPositionWithOffset( i, gridDimensions, gridMin, gridPosition );
+			grid.getCellDimensions( gridPosition, cellMin, cellDims );
+			for ( int d = 0; d < n; d++ )
+				cellMax[ d ] = cellMin[ d ] + cellDims[ d ] - 1;
+			cells.add( new FinalInterval( cellMin, cellMax ) );
+		}
+		return cells;
+	}
+
+	/**
+	 * Splits the interval along its last dimension, that has a size greater
+	 * than one, into approximately equally sized slabs.
+	 */
+	private static List< Interval > slabs( final Interval interval, final int numSlabs )
+	{
+		final List< Interval > slabs = new ArrayList<>();
+		int d = interval.numDimensions() - 1;
+		while ( d > 0 && interval.dimension( d ) == 1 )
+			d--;
+		final long size = interval.dimension( d );
+		final long step = ( size + numSlabs - 1 ) / numSlabs;
+		final long[] min = Intervals.minAsLongArray( interval );
+		final long[] max = Intervals.maxAsLongArray( interval );
+		for ( long start = 0; start < size; start += step )
+		{
+			min[ d ] = interval.min( d ) + start;
+			max[ d ] = Math.min( min[ d ] + step, interval.min( d ) + size ) - 1;
+			slabs.add( new FinalInterval( min, max ) );
+		}
+		return slabs;
+	}
+
+	private static < R > List< R > reduce( final List< Interval > partitions, final Reduction< R > reduction,
+			final ExecutorService service ) throws InterruptedException
+	{
+		final List< R > results = new ArrayList<>();
+		if ( service == null || partitions.size() < 2 || AbstractVirtualStack.isWorkerThread() )
+		{
+			for ( final Interval partition : partitions )
+				results.add( reduction.reduce( partition ) );
+			return results;
+		}
+		final List< Callable< R > > tasks = new ArrayList<>();
+		for ( final Interval partition : partitions )
+			tasks.add( AbstractVirtualStack.workerTask( () -> reduction.reduce( partition ) ) );
+		try
+		{
+			for ( final Future< R > future : service.invokeAll( tasks ) )
+				results.add( future.get() );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof InterruptedException )
+				throw ( InterruptedException ) cause;
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+		catch ( final CancellationException e )
+		{
+			throw new InterruptedException();
+		}
+		return results;
+	}
+
+	private static < S > Partial minMax( final RandomAccessibleInterval< S > source, final Converter< ? super S, FloatType > converter,
+			final List< Interval > intervals ) throws InterruptedException
+	{
+		final FloatType value = new FloatType();
+		final Partial partial = new Partial();
+		for ( final Interval interval : intervals )
+		{
+			final Cursor< S > cursor = Views.flatIterable( Views.interval( source, interval ) ).cursor();
+			long steps = 0;
+			while ( cursor.hasNext() )
+			{
+				if ( ++steps % CHECK_INTERVAL == 0 )
+					checkInterrupted();
+				converter.convert( cursor.next(), value );
+				final float v = value.get();
+				if ( !Float.isFinite( v ) )
+					continue;
+				if ( v < partial.min )
+					partial.min = v;
+				if ( v > partial.max )
+					partial.max = v;
+				partial.count++;
+			}
+		}
+		return partial;
+	}
+
+	private static < S > long[] histogram( final RandomAccessibleInterval< S > source, final Converter< ? super S, FloatType > converter,
+			final List< Interval > intervals, final double min, final double max, final int bins ) throws InterruptedException
+	{
+		final FloatType value = new FloatType();
+		final long[] histogram = new long[ bins ];
+		final double scale = max > min ? bins / ( max - min ) : 0;
+		for ( final Interval interval : intervals )
+		{
+			final Cursor< S > cursor = Views.flatIterable( Views.interval( source, interval ) ).cursor();
+			long steps = 0;
+			while ( cursor.hasNext() )
+			{
+				if ( ++steps % CHECK_INTERVAL == 0 )
+					checkInterrupted();
+				converter.convert( cursor.next(), value );
+				final float v = value.get();
+				if ( !Float.isFinite( v ) )
+					continue;
+				histogram[ Math.min( ( int ) ( ( v - min ) * scale ), bins - 1 ) ]++;
+			}
+		}
+		return histogram;
+	}
+
+	private static void sampleCells( final AbstractCellImg< ?, ?, ?, ? > img, final Sample< ? > sample )
+	{
+		final CellGrid grid = img.getCellGrid();
+		final long numCells = Intervals.numElements( grid.getGridDimensions() );
+		final int maxCells = ( int ) Math.max( 1, Math.min( numCells, sample.values.length / MIN_SAMPLES_PER_CELL ) );
+		final Cache< Long, ? > cache = img instanceof CachedCellImg ? ( ( CachedCellImg< ?, ? > ) img ).getCache() : null;
+		final int n = grid.numDimensions();
+		final long[] cellMin = new long[ n ];
+		final int[] cellDims = new int[ n ];
+		final long[] cellMax = new long[ n ];
+		int remainingCells = maxCells;
+		for ( int k = 0; k < maxCells; k++ )
+		{
+			// NB: One cell of each stratum is sampled, preferably a cached one.
+			final long start = ( long ) ( ( double ) k * numCells / maxCells );
+			final long end = ( long ) ( ( double ) ( k + 1 ) * numCells / maxCells );
+			final long cell = cachedCell( cache, start, end );
+			grid.getCellDimensions( cell >= 0 ? cell : ( start + end ) / 2, cellMin, cellDims );
+			for ( int d = 0; d < n; d++ )
+				cellMax[ d ] = cellMin[ d ] + cellDims[ d ] - 1;
+			sample.add( new FinalInterval( cellMin, cellMax ), ( sample.values.length - sample.size ) / remainingCells-- );
+		}
+	}
+
+	/**
+	 * Returns a cell between start (inclusive) and end (exclusive), that is
+	 * in the cache, or -1. At most {@link #PROBES_PER_STRATUM} evenly spaced
+	 * cells are checked.
+	 */
+	private static long cachedCell( final Cache< Long, ? > cache, final long start, final long end )
+	{
+		if ( cache == null )
+			return -1;
+		final long probes = Math.min( end - start, PROBES_PER_STRATUM );
+		for ( long p = 0; p < probes; p++ )
+		{
+			final long cell = start + p * ( end - start ) / probes;
+			if ( cache.getIfPresent( cell ) != null )
+				return cell;
+		}
+		return -1;
+	}
+
+	/** Pixel values, sampled at random positions of a stratified grid. */
+	private static class Sample< S >
+	{
+		private final RandomAccess< S > access;
+
+		private final Converter< ? super S, FloatType > converter;
+
+		private final FloatType value = new FloatType();
+
+		private final Random random = new Random( 42 );
+
+		private final float[] values;
+
+		private int size = 0;
+
+		private Sample( final RandomAccessibleInterval< S > source, final Converter< ? super S, FloatType > converter, final int maxSamples )
+		{
+			this.access = source.randomAccess();
+			this.converter = converter;
+			this.values = new float[ maxSamples ];
+		}
+
+		/**
+		 * Adds n samples of the given interval. The interval is divided into
+		 * n strata in flat iteration order, and one pixel of each stratum is
+		 * sampled.
+		 */
+		private void add( final Interval interval, final int n )
+		{
+			final long numElements = Intervals.numElements( interval );
+			final int count = ( int ) Math.min( n, numElements );
+			final long[] dimensions = Intervals.dimensionsAsLongArray( interval );
+			final long[] min = Intervals.minAsLongArray( interval );
+			final long[] position = new long[ min.length ];
+			for ( int i = 0; i < count; i++ )
+			{
+				final long start = ( long ) ( ( double ) i * numElements / count );
+				final long end = ( long ) ( ( double ) ( i + 1 ) * numElements / count );
+				final long index = start + ( long ) ( random.nextDouble() * ( end - start ) );
+				IntervalIndexer.indexToPositionWithOffset( index, dimensions, min, position );
+				access.setPosition( position );
+				converter.convert( access.get(), value );
+				final float v = value.get();
+				if ( v == v )
+					values[ size++ ] = v;
+			}
+		}
+	}
+
+	private static void checkInterrupted() throws InterruptedException
+	{
+		if ( Thread.interrupted() )
+			throw new InterruptedException();
+	}
+
+	private interface Reduction< R >
+	{
+		R reduce( Interval partition ) throws InterruptedException;
+	}
+
+	/** Result of the first pass over a partition. */
+	private static class Partial
+	{
+		private double min = Double.POSITIVE_INFINITY;
+
+		private double max = Double.NEGATIVE_INFINITY;
+
+		private long count = 0;
+	}
+}
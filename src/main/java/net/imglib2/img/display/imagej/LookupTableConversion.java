@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.projector.PrimitiveRowCopy;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.NativeTypeFactory;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.Unsigned12BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Converts the planes of an image of type {@link UnsignedByteType},
+ * {@link Unsigned12BitType}, {@link UnsignedShortType}, {@link ByteType} or
+ * {@link ShortType} into the pixels of an 8 or 16 bit {@link ij.ImagePlus}
+ * using a precomputed lookup table. Values outside the range of the
+ * {@link ij.ImagePlus} are clamped.
+ * <p>
+ * If the image is stored in primitive arrays, see {@link PrimitiveRowCopy},
+ * the rows of a plane are copied in bulk and then converted in one loop,
+ * without allocating a plane.
+ * Otherwise {@link #converter()} can be used to project the plane.
+ */
+class LookupTableConversion< S extends IntegerType< S > & NativeType< S > >
+{
+
+	/**
+	 * Returns a {@link LookupTableConversion} for the given image, or null if
+	 * the pixel type of the image is not supported.
+	 *
+	 * @param bitDepth 8 or 16, the bit depth of the {@link ij.ImagePlus}.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	static LookupTableConversion< ? > create( final RandomAccessibleInterval< ? > source, final int bitDepth )
+	{
+		final Object type = Util.getTypeFromInterval( source );
+		if ( !( type instanceof UnsignedByteType || type instanceof Unsigned12BitType || type instanceof UnsignedShortType
+				|| type instanceof ByteType || type instanceof ShortType ) )
+			return null;
+		return new LookupTableConversion( source, bitDepth );
+	}
+
+	private final RandomAccessibleInterval< S > source;
+
+	private final S type;
+
+	/** Smallest value of the pixel type, the value of the first table entry. */
+	private final int minValue;
+
+	/** Maps value - minValue to the clamped output, as unsigned short. */
+	private final short[] table;
+
+	private final boolean toBytes;
+
+	/** True, if the pixel type is stored in a byte[] or short[] per pixel. */
+	private final boolean bulk;
+
+	private final boolean signed;
+
+	/** Component type of the arrays, that store the source. */
+	private final Class< ? > rawType;
+
+	/**
+	 * Scratch array for converting between byte[] and short[], null while it
+	 * is used.
+	 */
+	private final AtomicReference< Object > scratch = new AtomicReference<>();
+
+	private LookupTableConversion( final RandomAccessibleInterval< S > source, final int bitDepth )
+	{
+		this.source = Views.isZeroMin( source ) ? source : Views.zeroMin( source );
+		this.type = Util.getTypeFromInterval( source ).createVariable();
+		this.minValue = ( int ) type.getMinValue();
+		this.toBytes = bitDepth == 8;
+		this.bulk = !( type instanceof Unsigned12BitType );
+		this.signed = type instanceof ByteType || type instanceof ShortType;
+		this.rawType = type instanceof UnsignedByteType || type instanceof ByteType ? byte.class : short.class;
+		final int outputMax = toBytes ? 0xff : 0xffff;
+		this.table = new short[ ( int ) type.getMaxValue() - minValue + 1 ];
+		for ( int i = 0; i < table.length; i++ )
+			table[ i ] = ( short ) Math.min( Math.max( i + minValue, 0 ), outputMax );
+	}
+
+	/** Returns the zero-min image, whose planes are converted. */
+	RandomAccessibleInterval< S > getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * Returns a {@link Converter} that uses the lookup table. Its output must
+	 * be an {@link IntegerType}.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	< B > Converter< S, B > converter()
+	{
+		final Converter< S, IntegerType< ? > > converter = ( s, o ) -> o.setInteger( table[ s.getInteger() - minValue ] & 0xffff );
+		return ( Converter ) converter;
+	}
+
+	/**
+	 * Converts the plane of the source at the given position into the given
+	 * byte[] or short[] pixels. Returns false without converting, if the
+	 * rows of the plane can't be copied in bulk.
+	 * <p>
+	 * If the source is stored in arrays of the same type as the pixels, the
+	 * rows are copied into the pixels and converted in place. Otherwise, they
+	 * are copied into a scratch array, that is reused by the next call.
+	 *
+	 * @param position Position of the plane, X and Y are ignored.
+	 */
+	boolean convert( final long[] position, final Object pixels )
+	{
+		if ( !bulk )
+			return false;
+		final boolean inPlace = pixels.getClass().getComponentType() == rawType;
+		final Object spare = inPlace ? null : scratch.getAndSet( null );
+		final Object rawPixels = inPlace ? pixels
+				: spare != null ? spare : Array.newInstance( rawType, ( int ) ( source.dimension( 0 ) * source.dimension( 1 ) ) );
+		try
+		{
+			if ( !PrimitiveRowCopy.copy( source, position, 0, 1, wrap( rawPixels ) ) )
+				return false;
+			if ( rawPixels instanceof byte[] )
+				convert( ( byte[] ) rawPixels, pixels );
+			else
+				convert( ( short[] ) rawPixels, pixels );
+			return true;
+		}
+		finally
+		{
+			if ( !inPlace )
+				scratch.set( rawPixels );
+		}
+	}
+
+	/** Wraps the given byte[] or short[] of the size of a plane into an {@link ArrayImg} of type S. */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private ArrayImg< S, ? > wrap( final Object rawPixels )
+	{
+		final ArrayDataAccess< ? > access = rawPixels instanceof byte[]
+				? new ByteArray( ( byte[] ) rawPixels )
+				: new ShortArray( ( short[] ) rawPixels );
+		final ArrayImg img = new ArrayImg( access, new long[] { source.dimension( 0 ), source.dimension( 1 ) }, type.getEntitiesPerPixel() );
+		img.setLinkedType( ( ( NativeTypeFactory ) type.getNativeTypeFactory() ).createLinkedType( img ) );
+		return img;
+	}
+
+	private void convert( final byte[] raw, final Object pixels )
+	{
+		final int mask = signed ? -1 : 0xff;
+		final short[] table = this.table;
+		final int offset = minValue;
+		if ( toBytes )
+		{
+			final byte[] out = ( byte[] ) pixels;
+			for ( int i = 0; i < raw.length; i++ )
+				out[ i ] = ( byte ) table[ ( raw[ i ] & mask ) - offset ];
+		}
+		else
+		{
+			final short[] out = ( short[] ) pixels;
+			for ( int i = 0; i < raw.length; i++ )
+				out[ i ] = table[ ( raw[ i ] & mask ) - offset ];
+		}
+	}
+
+	private void convert( final short[] raw, final Object pixels )
+	{
+		final int mask = signed ? -1 : 0xffff;
+		final short[] table = this.table;
+		final int offset = minValue;
+		if ( toBytes )
+		{
+			final byte[] out = ( byte[] ) pixels;
+			for ( int i = 0; i < raw.length; i++ )
+				out[ i ] = ( byte ) table[ ( raw[ i ] & mask ) - offset ];
+		}
+		else
+		{
+			final short[] out = ( short[] ) pixels;
+			for ( int i = 0; i < raw.length; i++ )
+				out[ i ] = table[ ( raw[ i ] & mask ) - offset ];
+		}
+	}
+}
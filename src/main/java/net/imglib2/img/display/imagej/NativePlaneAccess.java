@@ -0,0 +1,225 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.lang.reflect.Array;
+import java.util.function.Function;
+
+import net.imglib2.Dirty;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.display.projector.NativeImgView;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.imageplus.ReadOnlyArrays;
+import net.imglib2.img.planar.PlanarImg;
+
+/**
+ * Gives direct access to the primitive arrays that store the XY-planes of a
+ * {@link RandomAccessibleInterval}.
+ * <p>
+ * This works if the {@link RandomAccessibleInterval} is an {@link ArrayImg},
+ * {@link PlanarImg} or {@link AbstractCellImg}, without converter, that is
+ * possibly wrapped into views, that translate, slice, permute or add the
+ * dimensions above X and Y. X and Y must not be transformed, and the XY-plane
+ * must cover the full extent of the underlying image. Cells of a cell image
+ * must span the entire XY-plane.
+ *
+ * @see ImageJVirtualStack
+ * @see NativeImgView
+ */
+class NativePlaneAccess
+{
+
+	/**
+	 * Returns a {@link NativePlaneAccess} for the given zero-min image, or
+	 * null if the pixels of the image are not stored in suitable primitive
+	 * arrays.
+	 */
+	static NativePlaneAccess create( final RandomAccessibleInterval< ? > source )
+	{
+		if ( source.numDimensions() < 2 )
+			return null;
+		final NativeImgView view = NativeImgView.unwrap( source );
+		if ( view == null || !cellsSpanPlanes( view.getImg() ) )
+			return null;
+		final NativeImg< ?, ? > img = view.getImg();
+		final long[] origin = new long[ img.numDimensions() ];
+		view.toImg( new long[ source.numDimensions() ], origin );
+		for ( int d = 0; d < 2; d++ )
+			if ( !view.isAligned( d, d ) || origin[ d ] != img.min( d ) || source.dimension( d ) != img.dimension( d ) )
+				return null;
+		return new NativePlaneAccess( view, source.numDimensions() );
+	}
+
+	private static boolean cellsSpanPlanes( final NativeImg< ?, ? > img )
+	{
+		if ( !( img instanceof AbstractCellImg ) )
+			return true;
+		final CellGrid grid = ( ( AbstractCellImg< ?, ?, ?, ? > ) img ).getCellGrid();
+		return grid.cellDimension( 0 ) >= grid.imgDimension( 0 ) && grid.cellDimension( 1 ) >= grid.imgDimension( 1 );
+	}
+
+	private final NativeImgView view;
+
+	private final NativeImg< ?, ? > img;
+
+	private final int numDimensions;
+
+	private final int planeSize;
+
+	private NativePlaneAccess( final NativeImgView view, final int numDimensions )
+	{
+		this.view = view;
+		this.img = view.getImg();
+		this.numDimensions = numDimensions;
+		this.planeSize = ( int ) ( img.dimension( 0 ) * img.dimension( 1 ) );
+	}
+
+	/**
+	 * Returns the plane at the given position, or null if the plane is not
+	 * stored in a primitive array.
+	 *
+	 * @param position Position of the plane, in the dimensions above X and Y
+	 *            of the image given to {@link #create}.
+	 */
+	Plane getPlane( final long[] position )
+	{
+		final long[] viewPosition = new long[ numDimensions ];
+		System.arraycopy( position, 0, viewPosition, 2, numDimensions - 2 );
+		final long[] imgPosition = new long[ img.numDimensions() ];
+		view.toImg( viewPosition, imgPosition );
+		for ( int d = 0; d < imgPosition.length; d++ )
+			imgPosition[ d ] -= img.min( d );
+		if ( img instanceof ArrayImg )
+			return toPlane( ( ( ArrayImg< ?, ? > ) img ).update( null ), planeIndex( imgPosition, img ) * planeSize );
+		if ( img instanceof PlanarImg )
+			return toPlane( ( ( PlanarImg< ?, ? > ) img ).getPlane( ( int ) planeIndex( imgPosition, img ) ), 0 );
+		return getCellPlane( ( AbstractCellImg ) img, imgPosition );
+	}
+
+	private < A > Plane getCellPlane( final AbstractCellImg< ?, A, ?, ? > cellImg, final long[] imgPosition )
+	{
+		final CellGrid grid = cellImg.getCellGrid();
+		final int n = imgPosition.length;
+		final long[] gridPosition = new long[ n ];
+		for ( int d = 2; d < n; d++ )
+			gridPosition[ d ] = imgPosition[ d ] / grid.cellDimension( d );
+		final RandomAccess< ? extends Cell< A > > cells = cellImg.getCells().randomAccess();
+		cells.setPosition( gridPosition );
+		final Cell< A > cell = cells.get();
+		long index = 0;
+		for ( int d = n - 1; d >= 2; d-- )
+			index = index * cell.dimension( d ) + imgPosition[ d ] - cell.min( d );
+		return toPlane( cell.getData(), index * planeSize );
+	}
+
+	private Plane toPlane( final Object access, final long offset )
+	{
+		if ( !( access instanceof ArrayDataAccess ) )
+			return null;
+		return new Plane( ( ArrayDataAccess< ? > ) access, ( int ) offset, planeSize );
+	}
+
+	private static long planeIndex( final long[] position, final NativeImg< ?, ? > img )
+	{
+		long index = 0;
+		for ( int d = position.length - 1; d >= 2; d-- )
+			index = index * img.dimension( d ) + position[ d ];
+		return index;
+	}
+
+	/**
+	 * A range of a primitive array, that stores the pixels of one XY-plane.
+	 */
+	static class Plane
+	{
+		private final ArrayDataAccess< ? > access;
+
+		private final int offset;
+
+		private final int length;
+
+		private Plane( final ArrayDataAccess< ? > access, final int offset, final int length )
+		{
+			this.access = access;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Returns the pixels of the plane. The backing array is returned
+		 * without copying, if it contains exactly the one plane and a copy is
+		 * not requested. Otherwise, the pixels are copied into a new array.
+		 */
+		Object getPixels( final boolean copy )
+		{
+			return getPixels( copy, componentType -> Array.newInstance( componentType, length ) );
+		}
+
+		/**
+		 * Same as {@link #getPixels(boolean)}, but a copy is made into an
+		 * array of the plane's length, that is returned by the given function
+		 * for the component type.
+		 */
+		Object getPixels( final boolean copy, final Function< Class< ? >, Object > allocate )
+		{
+			if ( !copy && offset == 0 && access.getArrayLength() == length )
+				return access.getCurrentStorageArray();
+			// NB: A copy doesn't allocate a lazily allocated plane.
+			final Object array = ReadOnlyArrays.get( access );
+			final Object pixels = allocate.apply( array.getClass().getComponentType() );
+			System.arraycopy( array, offset, pixels, 0, length );
+			return pixels;
+		}
+
+		/**
+		 * Copies the given pixels into the plane. Nothing is copied, if the
+		 * given array is the backing array itself.
+		 */
+		void setPixels( final Object pixels )
+		{
+			final Object array = access.getCurrentStorageArray();
+			if ( pixels != array )
+				System.arraycopy( pixels, 0, array, offset, length );
+			if ( access instanceof Dirty )
+				( ( Dirty ) access ).setDirty();
+		}
+	}
+}
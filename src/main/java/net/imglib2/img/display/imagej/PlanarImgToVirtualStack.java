@@ -116,7 +116,8 @@ public class PlanarImgToVirtualStack extends AbstractVirtualStack
 		if ( !( img instanceof PlanarImg ) )
 			throw new IllegalArgumentException( "Image must be a PlanarImg." );
 		final IntUnaryOperator indexer = getIndexer( imgPlus );
-		final VirtualStack stack = new PlanarImgToVirtualStack( ( PlanarImg< ?, ? > ) img, indexer );
+		final long[] stackDimensions = { dimension( imgPlus, Axes.CHANNEL ), dimension( imgPlus, Axes.Z ), dimension( imgPlus, Axes.TIME ) };
+		final VirtualStack stack = new PlanarImgToVirtualStack( ( PlanarImg< ?, ? > ) img, indexer, stackDimensions );
 		final ImagePlus imagePlus = new ImagePlus( imgPlus.getName(), stack );
 		imagePlus.setDimensions( dimension( imgPlus, Axes.CHANNEL ), dimension( imgPlus, Axes.Z ), dimension( imgPlus, Axes.TIME ) );
 		CalibrationUtils.copyCalibrationToImagePlus( imgPlus, imagePlus );
@@ -131,7 +132,8 @@ public class PlanarImgToVirtualStack extends AbstractVirtualStack
 
 	public static VirtualStack wrap( final PlanarImg< ?, ? > img )
 	{
-		return new PlanarImgToVirtualStack( img, x -> x );
+		final long[] stackDimensions = IntStream.range( 2, img.numDimensions() ).mapToLong( img::dimension ).toArray();
+		return new PlanarImgToVirtualStack( img, x -> x, stackDimensions );
 	}
 
 	// fields
@@ -140,13 +142,16 @@ public class PlanarImgToVirtualStack extends AbstractVirtualStack
 
 	private final IntUnaryOperator indexer;
 
+	private final int[] planeStrides;
+
 	// constructor
 
-	private PlanarImgToVirtualStack( final PlanarImg< ?, ? > img, final IntUnaryOperator indexer )
+	private PlanarImgToVirtualStack( final PlanarImg< ?, ? > img, final IntUnaryOperator indexer, final long[] stackDimensions )
 	{
 		super( ( int ) img.dimension( 0 ), ( int ) img.dimension( 1 ), initSize( img ), getBitDepth( img.randomAccess().get() ) );
 		this.img = img;
 		this.indexer = indexer;
+		this.planeStrides = PlanePrefetcher.strides( stackDimensions );
 	}
 
 	private static int initSize( final Interval interval )
@@ -162,6 +167,12 @@ public class PlanarImgToVirtualStack extends AbstractVirtualStack
 		return img.getPlane( indexer.applyAsInt( index ) ).getCurrentStorageArray();
 	}
 
+	@Override
+	protected int[] getPlaneStrides()
+	{
+		return planeStrides.length > 0 ? planeStrides : super.getPlaneStrides();
+	}
+
 	@Override
 	protected void setPixelsZeroBasedIndex( int index, Object pixels )
 	{
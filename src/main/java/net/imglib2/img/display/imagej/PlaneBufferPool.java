@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of pixel arrays, that can be used by {@link AbstractVirtualStack} to
+ * reduce the allocation of planes, for example while playing a time series.
+ * The arrays are pooled by component type and length, at most
+ * {@code maxArraysPerSize} arrays of each size are kept. A pool can be shared
+ * by multiple stacks.
+ * <p>
+ * Only arrays acquired from the pool are accepted by {@link #release(Object)}.
+ * Releasing an array, that is still used, for example by an
+ * {@link ij.process.ImageProcessor} displayed by ImageJ, corrupts the pixels
+ * of that processor.
+ *
+ * @see AbstractVirtualStack#setBufferPool(PlaneBufferPool)
+ * @see AbstractVirtualStack#release(ij.process.ImageProcessor)
+ */
+public class PlaneBufferPool
+{
+	private final int maxArraysPerSize;
+
+	private final Map< Key, ArrayDeque< Object > > pool = new HashMap<>();
+
+	// NB: Arrays use identity for equals and hashCode.
+	private final Set< Object > acquired = Collections.newSetFromMap( new WeakHashMap<>() );
+
+	private long allocations = 0;
+
+	private long reuses = 0;
+
+	public PlaneBufferPool( final int maxArraysPerSize )
+	{
+		if ( maxArraysPerSize < 0 )
+			throw new IllegalArgumentException( "The number of pooled arrays must not be negative." );
+		this.maxArraysPerSize = maxArraysPerSize;
+	}
+
+	/**
+	 * Returns an array of the given component type and length. The content of
+	 * a reused array is undefined.
+	 */
+	public synchronized Object acquire( final Class< ? > componentType, final int length )
+	{
+		final ArrayDeque< Object > arrays = pool.get( new Key( componentType, length ) );
+		Object array = arrays == null ? null : arrays.poll();
+		if ( array == null )
+		{
+			array = Array.newInstance( componentType, length );
+			allocations++;
+		}
+		else
+			reuses++;
+		acquired.add( array );
+		return array;
+	}
+
+	/**
+	 * Returns the array to the pool. Arrays, that weren't acquired from this
+	 * pool, or that were released already, are ignored.
+	 *
+	 * @return true if the array was returned to the pool.
+	 */
+	public synchronized boolean release( final Object array )
+	{
+		if ( array == null || !acquired.remove( array ) )
+			return false;
+		final ArrayDeque< Object > arrays = pool.computeIfAbsent( new Key( array.getClass().getComponentType(), Array.getLength( array ) ), k -> new ArrayDeque<>() );
+		if ( arrays.size() >= maxArraysPerSize )
+			return false;
+		arrays.push( array );
+		return true;
+	}
+
+	/** Removes all pooled arrays. */
+	public synchronized void clear()
+	{
+		pool.clear();
+	}
+
+	/** Returns the number of arrays, that were allocated by {@link #acquire}. */
+	public synchronized long getAllocations()
+	{
+		return allocations;
+	}
+
+	/** Returns the number of arrays, that were reused by {@link #acquire}. */
+	public synchronized long getReuses()
+	{
+		return reuses;
+	}
+
+	private static class Key
+	{
+		private final Class< ? > componentType;
+
+		private final int length;
+
+		private Key( final Class< ? > componentType, final int length )
+		{
+			this.componentType = componentType;
+			this.length = length;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key other = ( Key ) obj;
+			return componentType == other.componentType && length == other.length;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash( componentType, length );
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of image planes, keyed by the zero-based plane
+ * index. The planes are stored as primitive arrays (byte[], short[], int[] or
+ * float[]), and the cache is bounded by the total number of bytes of the
+ * cached arrays.
+ * <p>
+ * {@link ImageJVirtualStack} uses a {@link PlaneCache} to avoid recomputing
+ * planes, that are requested repeatedly. The number of cache hits and misses
+ * can be queried to tune the size of the cache.
+ *
+ * @see ImageJVirtualStack#setPlaneCache(PlaneCache)
+ */
+public class PlaneCache
+{
+	private final long maxBytes;
+
+	private final LinkedHashMap< Integer, Object > planes = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long bytes = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/** Value of {@link #modifications}, when each plane was last invalidated. */
+	private final Map< Integer, Long > invalidated = new HashMap<>();
+
+	/** Value of {@link #modifications}, when all planes were invalidated. */
+	private long allInvalidated = 0;
+
+	private long modifications = 0;
+
+	/**
+	 * @param maxBytes Maximal total size of the cached planes in bytes.
+	 */
+	public PlaneCache( final long maxBytes )
+	{
+		if ( maxBytes < 0 )
+			throw new IllegalArgumentException( "The size of the cache must not be negative." );
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cached array for the given plane, or null if the plane is
+	 * not cached. The returned array is owned by the cache, and must not be
+	 * modified.
+	 */
+	public synchronized Object get( final int index )
+	{
+		final Object pixels = planes.get( index );
+		if ( pixels == null )
+			misses++;
+		else
+			hits++;
+		return pixels;
+	}
+
+	/**
+	 * Stores the given array in the cache. The cache takes ownership of the
+	 * array. Least recently used planes are evicted, until the cache fits
+	 * into the byte budget. Planes larger than the byte budget are not
+	 * cached.
+	 */
+	public synchronized void put( final int index, final Object pixels )
+	{
+		final long size = sizeInBytes( pixels );
+		remove( index );
+		if ( size > maxBytes )
+			return;
+		planes.put( index, pixels );
+		bytes += size;
+		final Iterator< Map.Entry< Integer, Object > > iterator = planes.entrySet().iterator();
+		while ( bytes > maxBytes && iterator.hasNext() )
+		{
+			bytes -= sizeInBytes( iterator.next().getValue() );
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the generation of the given plane, which changes whenever the
+	 * plane is invalidated. Take the generation before computing a plane,
+	 * and pass it to {@link #put(int, Object, long)}.
+	 */
+	public synchronized long getGeneration( final int index )
+	{
+		return Math.max( allInvalidated, invalidated.getOrDefault( index, 0L ) );
+	}
+
+	/**
+	 * Same as {@link #put(int, Object)}, but the array is dropped, if the
+	 * plane was invalidated since the given generation was taken, see
+	 * {@link #getGeneration(int)}. Such an array might have been computed
+	 * from the pixels, that were replaced.
+	 */
+	public synchronized void put( final int index, final Object pixels, final long generation )
+	{
+		if ( getGeneration( index ) == generation )
+			put( index, pixels );
+	}
+
+	/**
+	 * Removes the given plane from the cache.
+	 */
+	public synchronized void invalidate( final int index )
+	{
+		remove( index );
+		invalidated.put( index, ++modifications );
+	}
+
+	private void remove( final int index )
+	{
+		final Object removed = planes.remove( index );
+		if ( removed != null )
+			bytes -= sizeInBytes( removed );
+	}
+
+	/**
+	 * Removes all planes from the cache.
+	 */
+	public synchronized void invalidateAll()
+	{
+		planes.clear();
+		bytes = 0;
+		invalidated.clear();
+		allInvalidated = ++modifications;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #get(int)}, that found the
+	 * requested plane in the cache.
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #get(int)}, that did not find the
+	 * requested plane in the cache.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of planes currently stored in the cache.
+	 */
+	public synchronized int size()
+	{
+		return planes.size();
+	}
+
+	/**
+	 * Returns the total size of the cached planes in bytes.
+	 */
+	public synchronized long getSizeInBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * Returns the maximal total size of the cached planes in bytes.
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	static long sizeInBytes( final Object pixels )
+	{
+		if ( pixels instanceof byte[] )
+			return ( ( byte[] ) pixels ).length;
+		if ( pixels instanceof short[] )
+			return 2L * ( ( short[] ) pixels ).length;
+		if ( pixels instanceof int[] )
+			return 4L * ( ( int[] ) pixels ).length;
+		if ( pixels instanceof float[] )
+			return 4L * ( ( float[] ) pixels ).length;
+		throw new IllegalArgumentException( "unsupported pixel type" );
+	}
+}
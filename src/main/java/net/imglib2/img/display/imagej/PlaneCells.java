@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.display.projector.NativeImgView;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.iterator.LocalizingIntervalIterator;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Finds the cells of a {@link CachedCellImg}, that intersect a plane of an
+ * {@link ImageJVirtualStack}.
+ */
+class PlaneCells
+{
+	/** Receives the cells of a plane. */
+	interface CellConsumer
+	{
+		/**
+		 * @param key Key of the cell in the {@link Cache}.
+		 * @param region The part of the plane, that is covered by the cell.
+		 */
+		void accept( long key, Interval region );
+	}
+
+	private final NativeImgView view;
+
+	private final CellGrid grid;
+
+	private final Cache< Long, ? > cache;
+
+	private PlaneCells( final NativeImgView view )
+	{
+		this.view = view;
+		final CachedCellImg< ?, ? > img = ( CachedCellImg< ?, ? > ) view.getImg();
+		this.grid = img.getCellGrid();
+		this.cache = img.getCache();
+	}
+
+	/**
+	 * Returns the {@link PlaneCells} for the given zero-min source of an
+	 * {@link ImageJVirtualStack}, or null if there is no {@link CachedCellImg}
+	 * behind the source.
+	 */
+	static PlaneCells create( final RandomAccessible< ? > source )
+	{
+		final NativeImgView view = NativeImgView.unwrapConverted( source );
+		if ( view == null || !( view.getImg() instanceof CachedCellImg ) )
+			return null;
+		return new PlaneCells( view );
+	}
+
+	Cache< Long, ? > getCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * Calls the consumer for each cell, that intersects the given plane.
+	 *
+	 * @param position Position of the plane in the higher dimensions of the
+	 *            source.
+	 */
+	void forEachCell( final long[] position, final int width, final int height, final CellConsumer consumer )
+	{
+		final int n = grid.numDimensions();
+		final long[] viewMin = new long[ position.length + 2 ];
+		System.arraycopy( position, 0, viewMin, 2, position.length );
+		final long[] viewMax = viewMin.clone();
+		viewMax[ 0 ] = width - 1;
+		viewMax[ 1 ] = height - 1;
+		final long[] imgMin = new long[ n ];
+		final long[] imgMax = new long[ n ];
+		view.toImg( viewMin, imgMin );
+		view.toImg( viewMax, imgMax );
+		final long[] gridMin = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			final long min = Math.min( imgMin[ d ], imgMax[ d ] );
+			final long max = Math.max( imgMin[ d ], imgMax[ d ] );
+			imgMin[ d ] = min;
+			imgMax[ d ] = max;
+			gridMin[ d ] = min / grid.cellDimension( d );
+			gridMax[ d ] = max / grid.cellDimension( d );
+		}
+		final long[] gridDimensions = grid.getGridDimensions();
+		final LocalizingIntervalIterator cells = new LocalizingIntervalIterator( gridMin, gridMax );
+		final long[] cell = new long[ n ];
+		final long[] cellMin = new long[ n ];
+		final long[] cellMax = new long[ n ];
+		final long[] a = viewMin.clone();
+		final long[] b = viewMin.clone();
+		while ( cells.hasNext() )
+		{
+			cells.fwd();
+			cells.localize( cell );
+			for ( int d = 0; d < n; d++ )
+			{
+				final long min = cell[ d ] * grid.cellDimension( d );
+				cellMin[ d ] = Math.max( imgMin[ d ], min );
+				cellMax[ d ] = Math.min( imgMax[ d ], min + grid.cellDimension( d ) - 1 );
+			}
+			view.toView( cellMin, a );
+			view.toView( cellMax, b );
+			consumer.accept( IntervalIndexer.positionToIndex( cell, gridDimensions ), new FinalInterval(
+					new long[] { Math.min( a[ 0 ], b[ 0 ] ), Math.min( a[ 1 ], b[ 1 ] ) },
+					new long[] { Math.max( a[ 0 ], b[ 0 ] ), Math.max( a[ 1 ], b[ 1 ] ) } ) );
+		}
+	}
+
+	/**
+	 * Loads the cells of the given plane, that are not yet cached,
+	 * concurrently on the {@link ExecutorService}, and waits until they are
+	 * loaded. Cells, that fail to load, are ignored here, the error is
+	 * reported when the plane is computed.
+	 */
+	void load( final long[] position, final int width, final int height, final ExecutorService service ) throws InterruptedException
+	{
+		final List< Long > missing = new ArrayList<>();
+		forEachCell( position, width, height, ( key, region ) -> {
+			if ( cache.getIfPresent( key ) == null )
+				missing.add( key );
+		} );
+		// NB: A single cell is loaded by the projection anyway.
+		if ( missing.size() < 2 )
+			return;
+		final List< Future< ? > > futures = new ArrayList<>();
+		for ( final Long key : missing )
+			futures.add( service.submit( () -> cache.get( key ) ) );
+		for ( final Future< ? > future : futures )
+		{
+			try
+			{
+				future.get();
+			}
+			catch ( final ExecutionException e )
+			{
+				// NB: The projection loads the cell again, and reports the error.
+			}
+		}
+	}
+}
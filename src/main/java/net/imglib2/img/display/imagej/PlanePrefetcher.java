@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+
+/**
+ * Computes the planes of an {@link AbstractVirtualStack} ahead of time.
+ * <p>
+ * The prefetcher observes the sequence of requested plane indices. If two
+ * consecutive requests differ by the same step, or by one of the strides of
+ * the hyperstack dimensions (channel, Z or time), the next planes in this
+ * direction are computed on an {@link ExecutorService} and kept in a small
+ * buffer, until they are requested. A jump to an unrelated plane discards the
+ * buffered planes.
+ *
+ * @see AbstractVirtualStack#setPrefetching(ExecutorService, int)
+ */
+class PlanePrefetcher
+{
+	private final IntFunction< Object > loader;
+
+	private final ExecutorService service;
+
+	private final int depth;
+
+	private final Map< Integer, Future< Object > > buffer = new HashMap<>();
+
+	private int lastIndex = -1;
+
+	private int lastStep = 0;
+
+	/**
+	 * @param loader Computes the pixels of a plane, given the zero based
+	 *            index.
+	 * @param service {@link ExecutorService} that is used to compute the
+	 *            planes in advance.
+	 * @param depth Number of planes that are computed in advance.
+	 */
+	PlanePrefetcher( final IntFunction< Object > loader, final ExecutorService service, final int depth )
+	{
+		if ( depth < 1 )
+			throw new IllegalArgumentException( "The prefetch depth must be positive." );
+		this.loader = loader;
+		this.service = service;
+		this.depth = depth;
+	}
+
+	/**
+	 * Returns the pixels of the requested plane, and schedules the
+	 * computation of the planes that are likely to be requested next.
+	 *
+	 * @param index Zero based index of the requested plane.
+	 * @param min Smallest valid plane index.
+	 * @param max Largest valid plane index plus one.
+	 * @param strides Strides between planes of the hyperstack dimensions.
+	 */
+	Object getPixels( final int index, final int min, final int max, final int[] strides )
+	{
+		final Future< Object > future;
+		synchronized ( this )
+		{
+			future = buffer.remove( index );
+			schedule( index, detectStep( index, strides ), min, max );
+		}
+		if ( future != null )
+		{
+			try
+			{
+				return future.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch ( final ExecutionException | CancellationException e )
+			{
+				// ignore, the plane is computed again below, such that a
+				// potential exception is thrown in the calling thread
+			}
+		}
+		return loader.apply( index );
+	}
+
+	/**
+	 * Discards the buffered pixels of the given plane.
+	 */
+	synchronized void invalidate( final int index )
+	{
+		final Future< Object > future = buffer.remove( index );
+		if ( future != null )
+			future.cancel( false );
+	}
+
+	/**
+	 * Discards all buffered planes.
+	 */
+	synchronized void invalidateAll()
+	{
+		for ( final Future< Object > future : buffer.values() )
+			future.cancel( false );
+		buffer.clear();
+	}
+
+	private int detectStep( final int index, final int[] strides )
+	{
+		final int step = index - lastIndex;
+		final boolean sequential = lastIndex >= 0 && step != 0 && ( step == lastStep || contains( strides, Math.abs( step ) ) );
+		lastIndex = index;
+		lastStep = step;
+		return sequential ? step : 0;
+	}
+
+	private void schedule( final int index, final int step, final int min, final int max )
+	{
+		final Iterator< Map.Entry< Integer, Future< Object > > > iterator = buffer.entrySet().iterator();
+		while ( iterator.hasNext() )
+		{
+			final Map.Entry< Integer, Future< Object > > entry = iterator.next();
+			if ( !isAhead( entry.getKey(), index, step ) )
+			{
+				entry.getValue().cancel( false );
+				iterator.remove();
+			}
+		}
+		if ( step == 0 )
+			return;
+		for ( int i = 1; i <= depth; i++ )
+		{
+			final int next = index + i * step;
+			if ( next < min || next >= max )
+				break;
+			if ( !buffer.containsKey( next ) )
+			{
+				final Callable< Object > task = AbstractVirtualStack.workerTask( () -> loader.apply( next ) );
+				try
+				{
+					buffer.put( next, service.submit( task ) );
+				}
+				catch ( final RejectedExecutionException e )
+				{
+					// ignore, the plane is computed when it's requested
+					return;
+				}
+			}
+		}
+	}
+
+	private boolean isAhead( final int candidate, final int index, final int step )
+	{
+		if ( step == 0 )
+			return false;
+		final int distance = candidate - index;
+		return distance % step == 0 && distance / step >= 1 && distance / step <= depth;
+	}
+
+	private static boolean contains( final int[] values, final int value )
+	{
+		for ( final int v : values )
+			if ( v == value )
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the strides between planes, for a stack with the given
+	 * dimensions. The first dimension changes fastest.
+	 */
+	static int[] strides( final long... stackDimensions )
+	{
+		final int[] strides = new int[ stackDimensions.length ];
+		int stride = 1;
+		for ( int i = 0; i < stackDimensions.length; i++ )
+		{
+			strides[ i ] = stride;
+			stride *= ( int ) stackDimensions[ i ];
+		}
+		return strides;
+	}
+}
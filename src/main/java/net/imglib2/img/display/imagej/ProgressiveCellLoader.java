@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+import net.imglib2.Interval;
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.CachedCellImg;
+
+/**
+ * Finds the cells of a {@link CachedCellImg}, that are needed to compute a
+ * plane of an {@link ImageJVirtualStack}, without waiting for them.
+ * <p>
+ * Cells, that are not yet in the cache, are loaded on an
+ * {@link ExecutorService}. When all the missing cells of a plane have been
+ * loaded, the listener is called with the zero based index of the plane.
+ *
+ * @see ImageJVirtualStack#setProgressiveLoading(ExecutorService, IntConsumer)
+ */
+class ProgressiveCellLoader
+{
+	private final PlaneCells cells;
+
+	private final Cache< Long, ? > cache;
+
+	private final ExecutorService fetchers;
+
+	private final IntConsumer listener;
+
+	/** Cells, that are currently loaded by the fetchers. */
+	private final Set< Long > loading = new HashSet<>();
+
+	/**
+	 * Cells, that failed to load. They are treated as if they were present,
+	 * such that the next request of the plane reports the error.
+	 */
+	private final Set< Long > failed = new HashSet<>();
+
+	/** Planes, that wait for cells, by zero based index. */
+	private final Map< Integer, Set< Long > > waiting = new HashMap<>();
+
+	ProgressiveCellLoader( final PlaneCells cells, final ExecutorService fetchers, final IntConsumer listener )
+	{
+		this.cells = cells;
+		this.cache = cells.getCache();
+		this.fetchers = fetchers;
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns null, if all cells of the given plane are present in the cache.
+	 * Otherwise the missing cells are queued for loading, and the regions of
+	 * the plane, that are covered by present cells, are returned.
+	 *
+	 * @param index Zero based index of the plane.
+	 * @param position Position of the plane in the higher dimensions of the
+	 *            source.
+	 */
+	List< Interval > availableRegions( final int index, final long[] position, final int width, final int height )
+	{
+		final List< Interval > available = new ArrayList<>();
+		final List< Long > missing = new ArrayList<>();
+		cells.forEachCell( position, width, height, ( key, region ) -> {
+			if ( isAvailable( key ) )
+				available.add( region );
+			else
+				missing.add( key );
+		} );
+		if ( missing.isEmpty() )
+			return null;
+		return load( index, missing ) ? available : null;
+	}
+
+	private boolean isAvailable( final long key )
+	{
+		if ( cache.getIfPresent( key ) != null )
+			return true;
+		synchronized ( this )
+		{
+			return failed.contains( key );
+		}
+	}
+
+	/**
+	 * Queues the given cells for loading, and registers the plane to be
+	 * notified. Returns false if the fetchers reject the tasks, the plane has
+	 * to be computed synchronously then.
+	 */
+	private boolean load( final int index, final List< Long > keys )
+	{
+		synchronized ( this )
+		{
+			for ( final Long key : keys )
+			{
+				if ( !loading.add( key ) )
+					continue;
+				try
+				{
+					fetchers.submit( () -> loadCell( key ) );
+				}
+				catch ( final RejectedExecutionException e )
+				{
+					loading.remove( key );
+					return false;
+				}
+			}
+			final Set< Long > pending = new HashSet<>( keys );
+			pending.retainAll( loading );
+			if ( !pending.isEmpty() )
+			{
+				waiting.put( index, pending );
+				return true;
+			}
+		}
+		// NB: The cells arrived, while the plane was computed.
+		listener.accept( index );
+		return true;
+	}
+
+	private void loadCell( final Long key )
+	{
+		boolean success = false;
+		try
+		{
+			cache.get( key );
+			success = true;
+		}
+		catch ( final ExecutionException | RuntimeException e )
+		{
+			// NB: The error is reported, when the plane is computed again.
+		}
+		finally
+		{
+			loaded( key, success );
+		}
+	}
+
+	private void loaded( final Long key, final boolean success )
+	{
+		final List< Integer > complete = new ArrayList<>();
+		synchronized ( this )
+		{
+			loading.remove( key );
+			if ( !success )
+				failed.add( key );
+			final Iterator< Map.Entry< Integer, Set< Long > > > iterator = waiting.entrySet().iterator();
+			while ( iterator.hasNext() )
+			{
+				final Map.Entry< Integer, Set< Long > > entry = iterator.next();
+				if ( entry.getValue().remove( key ) && entry.getValue().isEmpty() )
+				{
+					complete.add( entry.getKey() );
+					iterator.remove();
+				}
+			}
+		}
+		for ( final int index : complete )
+			listener.accept( index );
+	}
+}
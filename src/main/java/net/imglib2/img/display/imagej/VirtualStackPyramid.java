@@ -0,0 +1,240 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.ImageCanvas;
+import ij.measure.Calibration;
+
+/**
+ * Downsampled versions of an image, for fast overview navigation of images
+ * with very large planes.
+ * <p>
+ * Level 0 is the image itself. Each further level halves the width and height
+ * of the previous level, by averaging blocks of 2x2 pixels. The higher
+ * dimensions are not downsampled. The levels are computed lazily, cell by
+ * cell, and the cells are kept in a soft reference cache. Only the cells,
+ * that are needed to display a plane of a level, are computed.
+ * <p>
+ * A level is wrapped into an {@link ImagePlus} by {@link #wrap(int, String)},
+ * or swapped into an existing {@link ImagePlus} by
+ * {@link #setLevel(ImagePlus, int)}, for example when ImageJ zooms out, see
+ * {@link #levelFor(double)}.
+ */
+public class VirtualStackPyramid< T extends RealType< T > & NativeType< T > >
+{
+	private static final int CELL_SIZE = 256;
+
+	private final List< RandomAccessibleInterval< T > > levels = new ArrayList<>();
+
+	/**
+	 * @param source The image, at least two dimensional.
+	 * @param minSize Levels are added, until the width and height of the
+	 *            coarsest level are not larger than this.
+	 */
+	public VirtualStackPyramid( final RandomAccessibleInterval< T > source, final int minSize )
+	{
+		if ( minSize < 1 )
+			throw new IllegalArgumentException( "The minimal size must be positive." );
+		RandomAccessibleInterval< T > level = Views.isZeroMin( source ) ? source : Views.zeroMin( source );
+		levels.add( level );
+		while ( Math.max( level.dimension( 0 ), level.dimension( 1 ) ) > minSize )
+		{
+			level = downsample( level );
+			levels.add( level );
+		}
+	}
+
+	/** Returns the number of levels, including the full resolution level. */
+	public int numLevels()
+	{
+		return levels.size();
+	}
+
+	/**
+	 * Returns the given level. Level 0 is the full resolution image, the width
+	 * and height of level n are the ones of the image divided by 2^n and
+	 * rounded up.
+	 */
+	public RandomAccessibleInterval< T > getLevel( final int level )
+	{
+		return levels.get( level );
+	}
+
+	/**
+	 * Returns the coarsest level, that still has at least one pixel per
+	 * screen pixel, when the full resolution image is displayed at the given
+	 * magnification.
+	 */
+	public int levelFor( final double magnification )
+	{
+		int level = 0;
+		while ( level + 1 < levels.size() && ( 1L << ( level + 1 ) ) * magnification <= 1 )
+			level++;
+		return level;
+	}
+
+	/**
+	 * Wraps the given level into an {@link ImagePlus}, see
+	 * {@link ImageJFunctions#wrap(RandomAccessibleInterval, String)}.
+	 */
+	public ImagePlus wrap( final int level, final String title )
+	{
+		return ImageJFunctions.wrap( getLevel( level ), title );
+	}
+
+	/**
+	 * Replaces the stack of the given {@link ImagePlus}, which shows a level of
+	 * this pyramid, by the given level. The current position, the hyperstack
+	 * layout and the display range are kept, the pixel size of the
+	 * calibration is scaled accordingly. If the {@link ImagePlus} is
+	 * displayed, the magnification and the visible region of its
+	 * {@link ImageCanvas} are scaled too, such that the same part of the
+	 * image stays visible at the same size on screen.
+	 */
+	public void setLevel( final ImagePlus imp, final int level )
+	{
+		final int current = levelOf( imp );
+		if ( current == level )
+			return;
+		// NB: The stack is created directly, an ImagePlus would compute its first plane.
+		final ImageStack stack = ImageJFunctions.createStack( getLevel( level ), null );
+		final ImageCanvas canvas = imp.getCanvas();
+		final double magnification = canvas == null ? 1 : canvas.getMagnification();
+		final Rectangle srcRect = canvas == null ? null : new Rectangle( canvas.getSrcRect() );
+		final int c = imp.getChannel();
+		final int z = imp.getSlice();
+		final int t = imp.getFrame();
+		final double min = imp.getDisplayRangeMin();
+		final double max = imp.getDisplayRangeMax();
+		final Calibration calibration = imp.getCalibration().copy();
+		final double scale = Math.pow( 2, level - current );
+		calibration.pixelWidth *= scale;
+		calibration.pixelHeight *= scale;
+		calibration.xOrigin /= scale;
+		calibration.yOrigin /= scale;
+		imp.setStack( stack, imp.getNChannels(), imp.getNSlices(), imp.getNFrames() );
+		imp.setCalibration( calibration );
+		imp.setPosition( c, z, t );
+		imp.setDisplayRange( min, max );
+		// NB: The window may have replaced its canvas, when the size of the image changed.
+		final ImageCanvas newCanvas = imp.getCanvas();
+		if ( newCanvas != null && srcRect != null )
+		{
+			newCanvas.setSourceRect( scaleRectangle( srcRect, 1 / scale, imp.getWidth(), imp.getHeight() ) );
+			newCanvas.setMagnification( magnification * scale );
+		}
+		imp.updateAndDraw();
+	}
+
+	/**
+	 * Scales the rectangle by the given factor, such that the result covers
+	 * the scaled rectangle, and clips it to the given width and height.
+	 */
+	static Rectangle scaleRectangle( final Rectangle rectangle, final double factor, final int width, final int height )
+	{
+		final int x = Math.min( ( int ) Math.floor( rectangle.x * factor ), width - 1 );
+		final int y = Math.min( ( int ) Math.floor( rectangle.y * factor ), height - 1 );
+		final int maxX = Math.min( ( int ) Math.ceil( ( rectangle.x + rectangle.width ) * factor ), width );
+		final int maxY = Math.min( ( int ) Math.ceil( ( rectangle.y + rectangle.height ) * factor ), height );
+		return new Rectangle( x, y, Math.max( 1, maxX - x ), Math.max( 1, maxY - y ) );
+	}
+
+	private int levelOf( final ImagePlus imp )
+	{
+		for ( int level = 0; level < levels.size(); level++ )
+			if ( levels.get( level ).dimension( 0 ) == imp.getWidth() && levels.get( level ).dimension( 1 ) == imp.getHeight() )
+				return level;
+		throw new IllegalArgumentException( "The image doesn't show a level of this pyramid." );
+	}
+
+	private static < T extends RealType< T > & NativeType< T > > RandomAccessibleInterval< T > downsample( final RandomAccessibleInterval< T > source )
+	{
+		final long[] dimensions = source.dimensionsAsLongArray();
+		dimensions[ 0 ] = ( dimensions[ 0 ] + 1 ) / 2;
+		dimensions[ 1 ] = ( dimensions[ 1 ] + 1 ) / 2;
+		final int[] cellDimensions = new int[ dimensions.length ];
+		Arrays.fill( cellDimensions, 1 );
+		cellDimensions[ 0 ] = CELL_SIZE;
+		cellDimensions[ 1 ] = CELL_SIZE;
+		return new ReadOnlyCachedCellImgFactory().create( dimensions, source.getType().createVariable(),
+				cell -> downsample( source, cell ),
+				ReadOnlyCachedCellImgOptions.options().cellDimensions( cellDimensions ) );
+	}
+
+	/**
+	 * Sets each pixel of the cell to the average of the corresponding 2x2
+	 * block of the source. Blocks at the border of the source are completed
+	 * by repeating the border pixels.
+	 */
+	private static < T extends RealType< T > > void downsample( final RandomAccessibleInterval< T > source, final IterableInterval< T > cell )
+	{
+		final RandomAccess< T > in = Views.extendBorder( source ).randomAccess();
+		final Cursor< T > out = cell.localizingCursor();
+		final long[] position = new long[ source.numDimensions() ];
+		while ( out.hasNext() )
+		{
+			out.fwd();
+			out.localize( position );
+			position[ 0 ] *= 2;
+			position[ 1 ] *= 2;
+			in.setPosition( position );
+			double sum = in.get().getRealDouble();
+			in.fwd( 0 );
+			sum += in.get().getRealDouble();
+			in.fwd( 1 );
+			sum += in.get().getRealDouble();
+			in.bck( 0 );
+			sum += in.get().getRealDouble();
+			out.get().setReal( sum / 4 );
+		}
+	}
+}
@@ -34,6 +34,8 @@
 
 package net.imglib2.img.imageplus;
 
+import java.util.function.Function;
+
 import net.imglib2.exception.ImgLibException;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.planar.PlanarImg;
@@ -41,6 +43,8 @@ import net.imglib2.type.NativeType;
 import net.imglib2.util.Fraction;
 
 import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
 
 /**
  * A container that stores data in an array of 2D slices each as a linear array
@@ -78,6 +82,26 @@ public class ImagePlusImg< T extends NativeType< T >, A extends ArrayDataAccess<
 				new Fraction() );
 	}
 
+	/**
+	 * Wraps the planes of the given {@link ImagePlus}. A plane is read from
+	 * the {@link ij.ImageStack}, when it is accessed for the first time. This
+	 * makes wrapping deep or virtual stacks cheap. The planes of a virtual
+	 * stack are held by soft references, the image is read-only then, writes
+	 * are not written back to the stack.
+	 *
+	 * @param wrapPixels creates the access for the pixel array of a plane.
+	 */
+	protected ImagePlusImg( final ImagePlus imp, final Function< Object, A > wrapPixels )
+	{
+		super( new LazyPlaneList<>( imp, wrapPixels ), reduceDimensions( imp ), new Fraction() );
+
+		this.width = imp.getWidth();
+		this.height = imp.getHeight();
+		this.depth = imp.getNSlices();
+		this.frames = imp.getNFrames();
+		this.channels = imp.getNChannels();
+	}
+
 	protected ImagePlusImg(
 			final int width,
 			final int height,
@@ -154,6 +178,53 @@ public class ImagePlusImg< T extends NativeType< T >, A extends ArrayDataAccess<
 		throw new ImgLibException( this, "has no ImagePlus instance, it is not a standard type of ImagePlus" );
 	}
 
+	/**
+	 * Replaces a plane without copying. The image takes ownership of the given
+	 * plane: Its array is used by the image, and by the {@link ImageStack} of
+	 * the given {@link ImagePlus}, including the {@link ImageProcessor} of the
+	 * current slice. The caller must not reuse the array for other planes.
+	 * Cursors and random accesses, that are positioned on the replaced plane,
+	 * need to be repositioned to see the new plane.
+	 *
+	 * @param imp
+	 *            the {@link ImagePlus} backing this image, may be null.
+	 */
+	protected void replacePlane( final ImagePlus imp, final int no, final A plane )
+	{
+		if ( plane.getArrayLength() != numEntities( entitiesPerPixel ) )
+			throw new IllegalArgumentException( "The plane has " + plane.getArrayLength() + " entities, expected " + numEntities( entitiesPerPixel ) + "." );
+		mirror.set( no, plane );
+		if ( imp == null )
+			return;
+		final Object pixels = plane.getCurrentStorageArray();
+		if ( imp.getStackSize() > 1 )
+			imp.getStack().setPixels( pixels, no + 1 );
+		// NB: The ImagePlus caches the processor of the current slice, which
+		// would still show the old array.
+		if ( imp.getCurrentSlice() == no + 1 )
+		{
+			final ImageProcessor ip = imp.getProcessor();
+			if ( ip != null )
+				ip.setPixels( pixels );
+		}
+	}
+
+	/**
+	 * Creates an {@link ImagePlus}, whose stack shares the arrays of the
+	 * planes. This allocates all planes, that are allocated lazily.
+	 */
+	protected ImagePlus createImagePlus()
+	{
+		final ImageStack stack = new ImageStack( width, height );
+		for ( int i = 0; i < numSlices; ++i )
+			stack.addSlice( "", mirror.get( i ).getCurrentStorageArray() );
+		final ImagePlus imp = new ImagePlus( "image", stack );
+		imp.setDimensions( channels, depth, frames );
+		if ( numSlices > 1 )
+			imp.setOpenAsHyperStack( true );
+		return imp;
+	}
+
 	/*
 	 * protected static long[] expandDimensions( final long[] dimensions ) {
 	 * if(dimensions.length >= 5) return dimensions;
@@ -57,9 +57,27 @@ import net.imglib2.util.Util;
  */
 public class ImagePlusImgFactory< T extends NativeType< T > > extends PlanarImgFactory< T >
 {
+	private final boolean lazy;
+
 	public ImagePlusImgFactory( final T type )
+	{
+		this( type, false );
+	}
+
+	/**
+	 * @param lazy
+	 *            if true, the planes of the created images are allocated on
+	 *            the first write. Until then, they share a read-only zero
+	 *            plane. This saves memory for sparse images. The
+	 *            {@link ij.ImagePlus} is created, and all planes are
+	 *            allocated, on the first call of
+	 *            {@link ImagePlusImg#getImagePlus()}. Only applies to byte,
+	 *            short, int and float based types.
+	 */
+	public ImagePlusImgFactory( final T type, final boolean lazy )
 	{
 		super( type );
+		this.lazy = lazy;
 	}
 
 	@Override
@@ -93,16 +111,16 @@ public class ImagePlusImgFactory< T extends NativeType< T > > extends PlanarImgF
 		switch ( typeFactory.getPrimitiveType() )
 		{
 		case BYTE:
-			img = new ByteImagePlus( dimensions, entitiesPerPixel );
+			img = new ByteImagePlus( dimensions, entitiesPerPixel, lazy );
 			break;
 		case FLOAT:
-			img = new FloatImagePlus( dimensions, entitiesPerPixel );
+			img = new FloatImagePlus( dimensions, entitiesPerPixel, lazy );
 			break;
 		case INT:
-			img = new IntImagePlus( dimensions, entitiesPerPixel );
+			img = new IntImagePlus( dimensions, entitiesPerPixel, lazy );
 			break;
 		case SHORT:
-			img = new ShortImagePlus( dimensions, entitiesPerPixel );
+			img = new ShortImagePlus( dimensions, entitiesPerPixel, lazy );
 			break;
 		default:
 			final A creator = ArrayDataAccessFactory.get( typeFactory );
@@ -117,7 +135,7 @@ public class ImagePlusImgFactory< T extends NativeType< T > > extends PlanarImgF
 	public < S > ImgFactory< S > imgFactory( final S type ) throws IncompatibleTypeException
 	{
 		if ( NativeType.class.isInstance( type ) )
-			return new ImagePlusImgFactory( ( NativeType ) type );
+			return new ImagePlusImgFactory( ( NativeType ) type, lazy );
 		throw new IncompatibleTypeException( this, type.getClass().getCanonicalName() + " does not implement NativeType." );
 	}
 
@@ -136,6 +154,7 @@ public class ImagePlusImgFactory< T extends NativeType< T > > extends PlanarImgF
 	public ImagePlusImgFactory()
 	{
 		super();
+		this.lazy = false;
 	}
 
 	@Deprecated
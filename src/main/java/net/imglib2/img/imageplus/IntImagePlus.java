@@ -53,13 +53,37 @@ import ij.process.ColorProcessor;
  */
 public class IntImagePlus< T extends NativeType< T > > extends ImagePlusImg< T, IntArray >
 {
-	final ImagePlus imp;
+	ImagePlus imp;
+
+	private final boolean lazy;
 
 	public IntImagePlus( final long[] dim, final Fraction entitiesPerPixel )
+	{
+		this( dim, entitiesPerPixel, false );
+	}
+
+	/**
+	 * @param lazy
+	 *            if true, the planes are allocated on the first write, until
+	 *            then they share a zero plane. The {@link ImagePlus} is created
+	 *            on the first call of {@link #getImagePlus()}.
+	 */
+	public IntImagePlus( final long[] dim, final Fraction entitiesPerPixel, final boolean lazy )
 	{
 		super( dim, entitiesPerPixel );
 
-		if ( entitiesPerPixel.getRatio() == 1 )
+		this.lazy = lazy;
+
+		if ( lazy )
+		{
+			imp = null;
+
+			final int[] zeros = new int[ numEntities( entitiesPerPixel ) ];
+			mirror.clear();
+			for ( int i = 0; i < numSlices; ++i )
+				mirror.add( new LazyArrays.Ints( zeros ) );
+		}
+		else if ( entitiesPerPixel.getRatio() == 1 )
 		{
 			final ImageStack stack = new ImageStack( width, height );
 			for ( int i = 0; i < numSlices; ++i )
@@ -87,37 +111,36 @@ public class IntImagePlus< T extends NativeType< T > > extends ImagePlusImg< T,
 
 	public IntImagePlus( final ImagePlus imp )
 	{
-		super( imp );
+		super( imp, pixels -> new IntArray( ( int[] ) pixels ) );
 
 		this.imp = imp;
-
-		mirror.clear();
-		for ( int t = 0; t < frames; ++t )
-			for ( int z = 0; z < depth; ++z )
-				for ( int c = 0; c < channels; ++c )
-					mirror.add( new IntArray( ( int[] ) imp.getStack().getProcessor( imp.getStackIndex( c + 1, z + 1, t + 1 ) ).getPixels() ) );
+		this.lazy = false;
 	}
 
 	/**
 	 * This has to be overwritten, otherwise two different instances exist (one
 	 * in the imageplus, one in the mirror)
+	 *
+	 * @see ImagePlusImg#replacePlane(ImagePlus, int, net.imglib2.img.basictypeaccess.array.ArrayDataAccess)
 	 */
 	@Override
-	public void setPlane( final int no, final IntArray plane )
+	public synchronized void setPlane( final int no, final IntArray plane )
 	{
-		System.arraycopy( plane.getCurrentStorageArray(), 0, mirror.get( no ).getCurrentStorageArray(), 0, plane.getCurrentStorageArray().length );
+		replacePlane( imp, no, plane );
 	}
 
 	@Override
-	public void close()
+	public synchronized void close()
 	{
 		if ( imp != null )
 			imp.close();
 	}
 
 	@Override
-	public ImagePlus getImagePlus() throws ImgLibException
+	public synchronized ImagePlus getImagePlus() throws ImgLibException
 	{
+		if ( imp == null && lazy && entitiesPerPixel.getRatio() == 1 )
+			imp = createImagePlus();
 		if ( imp == null )
 			throw new ImgLibException( this, "has no ImagePlus instance, it is not a standard type of ImagePlus (" + entitiesPerPixel + " entities per pixel)" );
 		return imp;
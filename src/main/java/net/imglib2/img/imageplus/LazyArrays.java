@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.imageplus;
+
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+
+/**
+ * Plane accesses of lazily allocated {@link ImagePlusImg}s. Until the first
+ * write, a plane reads from a zero array, that is shared by all planes of the
+ * image. The array of the plane is allocated by the first call of
+ * {@code setValue(...)} or {@code getCurrentStorageArray()}, because the
+ * array returned by the latter may be written to. Readers, that copy whole
+ * planes, use {@link ReadOnlyArrays#get}, which doesn't allocate.
+ */
+final class LazyArrays
+{
+	private LazyArrays()
+	{
+		// prevent instantiation of utility class
+	}
+
+	/** A lazily allocated plane. */
+	interface Lazy
+	{
+		/**
+		 * Returns the array of the plane, or the shared zero array, if the
+		 * plane is not allocated. The returned array must not be written to.
+		 */
+		Object getArrayForReading();
+	}
+
+	static final class Bytes extends ByteArray implements Lazy
+	{
+		private final byte[] zeros;
+
+		private volatile boolean allocated = false;
+
+		Bytes( final byte[] zeros )
+		{
+			super( zeros );
+			this.zeros = zeros;
+		}
+
+		@Override
+		public byte[] getArrayForReading()
+		{
+			return allocated ? data : zeros;
+		}
+
+		@Override
+		public void setValue( final int index, final byte value )
+		{
+			if ( !allocated )
+				allocate();
+			data[ index ] = value;
+		}
+
+		@Override
+		public byte[] getCurrentStorageArray()
+		{
+			if ( !allocated )
+				allocate();
+			return data;
+		}
+
+		private synchronized void allocate()
+		{
+			if ( !allocated )
+			{
+				data = new byte[ data.length ];
+				allocated = true;
+			}
+		}
+	}
+
+	static final class Shorts extends ShortArray implements Lazy
+	{
+		private final short[] zeros;
+
+		private volatile boolean allocated = false;
+
+		Shorts( final short[] zeros )
+		{
+			super( zeros );
+			this.zeros = zeros;
+		}
+
+		@Override
+		public short[] getArrayForReading()
+		{
+			return allocated ? data : zeros;
+		}
+
+		@Override
+		public void setValue( final int index, final short value )
+		{
+			if ( !allocated )
+				allocate();
+			data[ index ] = value;
+		}
+
+		@Override
+		public short[] getCurrentStorageArray()
+		{
+			if ( !allocated )
+				allocate();
+			return data;
+		}
+
+		private synchronized void allocate()
+		{
+			if ( !allocated )
+			{
+				data = new short[ data.length ];
+				allocated = true;
+			}
+		}
+	}
+
+	static final class Floats extends FloatArray implements Lazy
+	{
+		private final float[] zeros;
+
+		private volatile boolean allocated = false;
+
+		Floats( final float[] zeros )
+		{
+			super( zeros );
+			this.zeros = zeros;
+		}
+
+		@Override
+		public float[] getArrayForReading()
+		{
+			return allocated ? data : zeros;
+		}
+
+		@Override
+		public void setValue( final int index, final float value )
+		{
+			if ( !allocated )
+				allocate();
+			data[ index ] = value;
+		}
+
+		@Override
+		public float[] getCurrentStorageArray()
+		{
+			if ( !allocated )
+				allocate();
+			return data;
+		}
+
+		private synchronized void allocate()
+		{
+			if ( !allocated )
+			{
+				data = new float[ data.length ];
+				allocated = true;
+			}
+		}
+	}
+
+	static final class Ints extends IntArray implements Lazy
+	{
+		private final int[] zeros;
+
+		private volatile boolean allocated = false;
+
+		Ints( final int[] zeros )
+		{
+			super( zeros );
+			this.zeros = zeros;
+		}
+
+		@Override
+		public int[] getArrayForReading()
+		{
+			return allocated ? data : zeros;
+		}
+
+		@Override
+		public void setValue( final int index, final int value )
+		{
+			if ( !allocated )
+				allocate();
+			data[ index ] = value;
+		}
+
+		@Override
+		public int[] getCurrentStorageArray()
+		{
+			if ( !allocated )
+				allocate();
+			return data;
+		}
+
+		private synchronized void allocate()
+		{
+			if ( !allocated )
+			{
+				data = new int[ data.length ];
+				allocated = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.imageplus;
+
+import java.lang.ref.SoftReference;
+import java.util.AbstractList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import ij.ImagePlus;
+
+/**
+ * Mirror of the planes of an {@link ImagePlus}, as used by
+ * {@link ImagePlusImg}. A plane is read from the {@link ij.ImageStack}, when
+ * it is requested for the first time, and kept afterwards. Creating the list
+ * is cheap, even for deep or virtual stacks.
+ * <p>
+ * The planes of a virtual stack are held by soft references, and read again,
+ * after the garbage collector cleared them. They are read-only, writes into
+ * them are not written back to the stack, and are lost, when the plane is
+ * read again. Planes set by {@link #set(int, Object)} are always kept.
+ */
+class LazyPlaneList< A > extends AbstractList< A >
+{
+	private final ImagePlus imp;
+
+	private final Function< Object, A > wrapPixels;
+
+	private final boolean virtual;
+
+	/**
+	 * The planes, or {@link SoftReference}s to the planes read from a virtual
+	 * stack.
+	 */
+	private final AtomicReferenceArray< Object > planes;
+
+	LazyPlaneList( final ImagePlus imp, final Function< Object, A > wrapPixels )
+	{
+		this.imp = imp;
+		this.wrapPixels = wrapPixels;
+		this.virtual = imp.getStack().isVirtual();
+		this.planes = new AtomicReferenceArray<>( imp.getStackSize() );
+	}
+
+	@Override
+	public A get( final int index )
+	{
+		checkIndex( index );
+		while ( true )
+		{
+			final Object current = planes.get( index );
+			final A plane = unwrap( current );
+			if ( plane != null )
+				return plane;
+			// NB: The planes are ordered c, z, t like the ImageStack.
+			final A loaded = wrapPixels.apply( imp.getStack().getPixels( index + 1 ) );
+			if ( planes.compareAndSet( index, current, virtual ? new SoftReference<>( loaded ) : loaded ) )
+				return loaded;
+		}
+	}
+
+	@Override
+	public A set( final int index, final A element )
+	{
+		checkIndex( index );
+		return unwrap( planes.getAndSet( index, element ) );
+	}
+
+	@Override
+	public int size()
+	{
+		return planes.length();
+	}
+
+	private void checkIndex( final int index )
+	{
+		if ( index < 0 || index >= planes.length() )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + planes.length() );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private A unwrap( final Object value )
+	{
+		if ( value instanceof SoftReference )
+			return ( ( SoftReference< A > ) value ).get();
+		return ( A ) value;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.display.projector;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+/**
+ * Tests {@link ForkJoinIterableIntervalProjector2D}.
+ */
+public class ForkJoinIterableIntervalProjector2DTest
+{
+
+	private final ForkJoinPool pool = new ForkJoinPool( 4 );
+
+	private final Converter< UnsignedByteType, FloatType > converter = ( i, o ) -> o.setReal( i.getRealFloat() );
+
+	@Test
+	public void testMap()
+	{
+		final Img< UnsignedByteType > source = RandomImgs.seed( 42 ).nextImage( new UnsignedByteType(), 300, 299, 3 );
+		final Img< FloatType > expected = ArrayImgs.floats( 300, 299 );
+		final Img< FloatType > actual = ArrayImgs.floats( 300, 299 );
+		final IterableIntervalProjector2D< UnsignedByteType, FloatType > reference = new IterableIntervalProjector2D<>( 0, 1, source, expected, converter );
+		reference.setPosition( 2, 2 );
+		reference.map();
+		final ForkJoinIterableIntervalProjector2D< UnsignedByteType, FloatType > projector = new ForkJoinIterableIntervalProjector2D<>( 0, 1, source, actual, converter, pool, 7 );
+		projector.setPosition( 2, 2 );
+		projector.map();
+		ImgLib2Assert.assertImageEquals( expected, actual );
+	}
+
+	@Test
+	public void testCellHeightBehindViews()
+	{
+		final Img< UnsignedByteType > cells = new CellImgFactory<>( new UnsignedByteType(), 300, 10 ).create( 300, 299 );
+		int i = 0;
+		for ( final UnsignedByteType pixel : cells )
+			pixel.set( i++ % 251 );
+		final RandomAccessibleInterval< FloatType > source = Views.zeroMin( Converters.convert(
+				Views.interval( cells, new long[] { 0, 5 }, new long[] { 299, 298 } ),
+				converter, new FloatType() ) );
+		assertEquals( 10, ForkJoinIterableIntervalProjector2D.cellHeight( source, 1 ) );
+		assertEquals( 1, ForkJoinIterableIntervalProjector2D.cellHeight( ArrayImgs.floats( 300, 299 ), 1 ) );
+		final Img< FloatType > expected = ArrayImgs.floats( 300, 294 );
+		final Img< FloatType > actual = ArrayImgs.floats( 300, 294 );
+		new IterableIntervalProjector2D<>( 0, 1, source, expected, ( a, b ) -> b.set( a ) ).map();
+		new ForkJoinIterableIntervalProjector2D< FloatType, FloatType >( 0, 1, source, actual, ( a, b ) -> b.set( a ), pool ).map();
+		ImgLib2Assert.assertImageEquals( expected, actual );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testExceptionIsPropagated()
+	{
+		final Img< UnsignedByteType > source = ArrayImgs.unsignedBytes( 300, 300 );
+		final Converter< UnsignedByteType, FloatType > failing = ( i, o ) -> {
+			throw new IllegalStateException();
+		};
+		new ForkJoinIterableIntervalProjector2D<>( 0, 1, source, ArrayImgs.floats( 300, 300 ), failing, pool ).map();
+	}
+}
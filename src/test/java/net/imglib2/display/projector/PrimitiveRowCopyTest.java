@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.display.projector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.TypeIdentity;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Fraction;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+/**
+ * Tests {@link PrimitiveRowCopy}.
+ */
+public class PrimitiveRowCopyTest
+{
+
+	private final Img< UnsignedShortType > array = RandomImgs.seed( 42 ).nextImage( new UnsignedShortType(), 30, 20, 3 );
+
+	@Test
+	public void testArrayImg()
+	{
+		assertCopyEquals( array, new long[] { 0, 0, 1 }, 30, 20 );
+	}
+
+	@Test
+	public void testPlanarImg()
+	{
+		assertCopyEquals( copy( new PlanarImgFactory<>( new UnsignedShortType() ) ), new long[] { 0, 0, 2 }, 30, 20 );
+	}
+
+	@Test
+	public void testCellImg()
+	{
+		assertCopyEquals( copy( new CellImgFactory<>( new UnsignedShortType(), 7, 5, 1 ) ), new long[] { 0, 0, 1 }, 30, 20 );
+	}
+
+	@Test
+	public void testCroppedCellImg()
+	{
+		final Img< UnsignedShortType > cells = copy( new CellImgFactory<>( new UnsignedShortType(), 7, 5, 2 ) );
+		final RandomAccessible< UnsignedShortType > cropped = Views.zeroMin( Views.interval( cells, new long[] { 3, 2, 0 }, new long[] { 25, 17, 2 } ) );
+		assertCopyEquals( cropped, new long[] { 0, 0, 1 }, 23, 16 );
+	}
+
+	@Test
+	public void testHyperSlice()
+	{
+		assertCopyEquals( Views.hyperSlice( array, 2, 2 ), new long[] { 0, 0 }, 30, 20 );
+	}
+
+	@Test
+	public void testPermutedIsNotSupported()
+	{
+		final ArrayImg< UnsignedShortType, ? > target = ArrayImgs.unsignedShorts( 20, 30 );
+		assertFalse( PrimitiveRowCopy.copy( Views.permute( array, 0, 1 ), new long[] { 0, 0, 0 }, 0, 1, target ) );
+	}
+
+	@Test
+	public void testOutOfBoundsIsNotSupported()
+	{
+		final ArrayImg< UnsignedShortType, ? > target = ArrayImgs.unsignedShorts( 30, 20 );
+		assertFalse( PrimitiveRowCopy.copy( Views.translate( array, 1, 0, 0 ), new long[] { 0, 0, 0 }, 0, 1, target ) );
+	}
+
+	@Test
+	public void testDifferentTypeIsNotSupported()
+	{
+		assertFalse( PrimitiveRowCopy.copy( array, new long[] { 0, 0, 0 }, 0, 1, ArrayImgs.floats( 30, 20 ) ) );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	@Test
+	public void testUnsupportedPlaneCopiesNothing()
+	{
+		// NB: The rows of the permuted image are planes, the second plane has an unsupported array type.
+		final List planes = Arrays.asList( new ShortArray( new short[] { 1, 2 } ), new ByteArray( new byte[] { 3, 4 } ) );
+		final PlanarImg< UnsignedShortType, ? > img = new PlanarImg<>( planes, new long[] { 2, 1, 2 }, new Fraction() );
+		img.setLinkedType( new UnsignedShortType( ( NativeImg ) img ) );
+		final ArrayImg< UnsignedShortType, ? > target = ArrayImgs.unsignedShorts( new short[] { 7, 7, 7, 7 }, 2, 2 );
+		assertFalse( PrimitiveRowCopy.copy( Views.permute( img, 1, 2 ), new long[] { 0, 0, 0 }, 0, 1, target ) );
+		for ( final UnsignedShortType pixel : target )
+			assertEquals( 7, pixel.get() );
+	}
+
+	@Test
+	public void testRowCopyProjector()
+	{
+		final RandomAccessible< UnsignedShortType > permuted = Views.permute( array, 0, 1 );
+		final ArrayImg< UnsignedShortType, ? > expected = ArrayImgs.unsignedShorts( 20, 30 );
+		final IterableIntervalProjector2D< UnsignedShortType, UnsignedShortType > reference = new IterableIntervalProjector2D<>( 0, 1, permuted, expected, new TypeIdentity<>() );
+		reference.setPosition( 1, 2 );
+		reference.map();
+		// NB: The permuted source can't be copied in rows, the projector falls back to the pixel by pixel projection.
+		final ArrayImg< UnsignedShortType, ? > actual = ArrayImgs.unsignedShorts( 20, 30 );
+		final RowCopyIterableIntervalProjector2D< UnsignedShortType, UnsignedShortType > projector = new RowCopyIterableIntervalProjector2D<>( 0, 1, permuted, actual, new TypeIdentity<>() );
+		projector.setPosition( 1, 2 );
+		projector.map();
+		ImgLib2Assert.assertImageEquals( expected, actual );
+	}
+
+	private Img< UnsignedShortType > copy( final ImgFactory< UnsignedShortType > factory )
+	{
+		final Img< UnsignedShortType > img = factory.create( array );
+		LoopBuilder.setImages( array, img ).forEachPixel( ( i, o ) -> o.set( i ) );
+		return img;
+	}
+
+	private static < T extends NativeType< T > > void assertCopyEquals( final RandomAccessible< T > source, final long[] position, final long width, final long height )
+	{
+		final T type = source.randomAccess().get().createVariable();
+		final ArrayImg< T, ? > expected = new ArrayImgFactory<>( type ).create( width, height );
+		final IterableIntervalProjector2D< T, T > reference = new IterableIntervalProjector2D<>( 0, 1, source, expected, new TypeIdentity<>() );
+		reference.setPosition( position );
+		reference.map();
+		final ArrayImg< T, ? > actual = new ArrayImgFactory<>( type ).create( width, height );
+		assertTrue( PrimitiveRowCopy.copy( source, position, 0, 1, actual ) );
+		ImgLib2Assert.assertImageEquals( expected, actual );
+	}
+}
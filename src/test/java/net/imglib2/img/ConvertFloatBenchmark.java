@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+
+/**
+ * Compares {@link ImagePlusAdapter#convertFloat(ImagePlus, ExecutorService)}
+ * with the cursor based {@link ImagePlusAdapter#convertToFloat}.
+ */
+@State( Scope.Benchmark )
+public class ConvertFloatBenchmark
+{
+	private final ImagePlus bytes = NewImage.createByteImage( "bytes", 1000, 1000, 20, NewImage.FILL_RAMP );
+
+	private final ImagePlus shorts = NewImage.createShortImage( "shorts", 1000, 1000, 20, NewImage.FILL_RAMP );
+
+	private final ImagePlus rgb = NewImage.createRGBImage( "rgb", 1000, 1000, 20, NewImage.FILL_RAMP );
+
+	private final ExecutorService service = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+
+	@TearDown
+	public void tearDown()
+	{
+		service.shutdown();
+	}
+
+	@Benchmark
+	public Object convertBytesOld()
+	{
+		return ImagePlusAdapter.convertToFloat( ImagePlusAdapter.wrapByte( bytes ), ( UnsignedByteType in, FloatType out ) -> out.setReal( in.getRealFloat() ) );
+	}
+
+	@Benchmark
+	public Object convertBytes()
+	{
+		return ImagePlusAdapter.convertFloat( bytes, null );
+	}
+
+	@Benchmark
+	public Object convertBytesParallel()
+	{
+		return ImagePlusAdapter.convertFloat( bytes, service );
+	}
+
+	@Benchmark
+	public Object convertShortsOld()
+	{
+		return ImagePlusAdapter.convertToFloat( ImagePlusAdapter.wrapShort( shorts ), ( UnsignedShortType in, FloatType out ) -> out.setReal( in.getRealFloat() ) );
+	}
+
+	@Benchmark
+	public Object convertShortsParallel()
+	{
+		return ImagePlusAdapter.convertFloat( shorts, service );
+	}
+
+	@Benchmark
+	public Object convertRGBOld()
+	{
+		return ImagePlusAdapter.convertToFloat( ImagePlusAdapter.wrapRGBA( rgb ), ( ARGBType in, FloatType out ) -> {
+			final int v = in.get();
+			out.setReal( ( ( v >> 24 ) & 0xff ) * ( ( ( v >> 16 ) & 0xff ) * 0.299 + ( ( v >> 8 ) & 0xff ) * 0.587 + ( v & 0xff ) * 0.144 ) );
+		} );
+	}
+
+	@Benchmark
+	public Object convertRGBParallel()
+	{
+		return ImagePlusAdapter.convertFloat( rgb, service );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( ConvertFloatBenchmark.class.getSimpleName() )
+				.forks( 0 )
+				.warmupIterations( 4 )
+				.measurementIterations( 8 )
+				.warmupTime( TimeValue.milliseconds( 100 ) )
+				.measurementTime( TimeValue.milliseconds( 100 ) )
+				.build();
+		new Runner( opt ).run();
+	}
+}
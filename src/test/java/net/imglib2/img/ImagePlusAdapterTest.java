@@ -35,15 +35,31 @@
 package net.imglib2.img;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.img.imageplus.ByteImagePlus;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
 import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
 
 import org.junit.Test;
 
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.gui.NewImage;
 import ij.measure.Calibration;
 
@@ -85,6 +101,66 @@ public class ImagePlusAdapterTest< T extends NumericType< T > & NativeType< T >
 			testDimensionality( dim[ i ], calibration[ i ] );
 	}
 
+	@Test
+	public void testPlanesAreReadLazily()
+	{
+		final AtomicInteger reads = new AtomicInteger();
+		final ImageStack stack = new ImageStack( 2, 3 )
+		{
+			@Override
+			public Object getPixels( final int n )
+			{
+				reads.incrementAndGet();
+				return super.getPixels( n );
+			}
+		};
+		for ( int i = 0; i < 100; i++ )
+			stack.addSlice( "", new byte[] { ( byte ) i, 0, 0, 0, 0, 0 } );
+		final ImagePlus imp = new ImagePlus( "test", stack );
+		reads.set( 0 );
+		final ByteImagePlus< UnsignedByteType > img = ImagePlusAdapter.wrapByte( imp );
+		assertEquals( 0, reads.get() );
+		final RandomAccess< UnsignedByteType > ra = img.randomAccess();
+		ra.setPosition( new long[] { 0, 0, 42 } );
+		assertEquals( 42, ra.get().get() );
+		assertTrue( reads.get() <= 2 );
+		ra.get().set( 7 );
+		assertEquals( 7, ( ( byte[] ) stack.getPixels( 43 ) )[ 0 ] );
+	}
+
+	@Test
+	public void testConvertFloat()
+	{
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			testConvertFloat( new UnsignedByteType(), service );
+			testConvertFloat( new UnsignedShortType(), service );
+			testConvertFloat( new ARGBType(), service );
+			testConvertFloat( new UnsignedByteType(), null );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	private < S extends NumericType< S > & NativeType< S > > void testConvertFloat( final S type, final ExecutorService service )
+	{
+		final ImagePlus imp = ImageJFunctions.wrap( RandomImgs.seed( 42 ).nextImage( type, 300, 200, 3, 5 ), "test" );
+		final Img< S > input = ImagePlusAdapter.wrap( imp );
+		final Img< FloatType > expected = ImagePlusAdapter.convertToFloat( input, ( in, out ) -> {
+			if ( in instanceof ARGBType )
+			{
+				final int v = ( ( ARGBType ) in ).get();
+				out.setReal( ( ( v >> 24 ) & 0xff ) * ( ( ( v >> 16 ) & 0xff ) * 0.299 + ( ( v >> 8 ) & 0xff ) * 0.587 + ( v & 0xff ) * 0.144 ) );
+			}
+			else
+				out.setReal( ( ( RealType< ? > ) in ).getRealFloat() );
+		} );
+		ImgLib2Assert.assertImageEquals( expected, ImagePlusAdapter.convertFloat( imp, service ) );
+	}
+
 	private void testDimensionality( final int[] dim, final float[] calibration )
 	{
 		final ImagePlus imp = createCalibratedImagePlus( dim, calibration );
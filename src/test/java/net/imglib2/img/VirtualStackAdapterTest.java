@@ -34,6 +34,17 @@
 
 package net.imglib2.img;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.imglib2.RandomAccess;
 import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.test.ImgLib2Assert;
 import net.imglib2.test.RandomImgs;
@@ -43,10 +54,12 @@ import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
 
 import org.junit.Test;
 
 import ij.ImagePlus;
+import ij.ImageStack;
 
 /**
  * Tests {@link VirtualStackAdapter}.
@@ -113,6 +126,243 @@ public class VirtualStackAdapterTest
 		ImgLib2Assert.assertImageEquals( expected, actual );
 	}
 
+	@Test
+	public void testCacheBoundedByCount()
+	{
+		final ImagePlus image = randomImagePlus( 789, new UnsignedByteType(), DIMENSIONS );
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 10 );
+		final Img< UnsignedByteType > actual = VirtualStackAdapter.wrapByte( image, cache );
+		ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapByte( image ), actual );
+		assertEquals( 10, cache.getResidentPlanes() );
+		assertTrue( cache.getMisses() >= 120 );
+		assertEquals( cache.getMisses() - 10, cache.getEvictions() );
+		assertEquals( 60, cache.getResidentBytes() );
+	}
+
+	@Test
+	public void testCacheBoundedByBytes()
+	{
+		final ImagePlus image = randomImagePlus( 890, new FloatType(), DIMENSIONS );
+		final VirtualStackCache cache = VirtualStackCache.boundedByBytes( 100 );
+		final Img< FloatType > actual = VirtualStackAdapter.wrapFloat( image, cache );
+		ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapFloat( image ), actual );
+		assertEquals( 4, cache.getResidentPlanes() );
+		assertEquals( 96, cache.getResidentBytes() );
+		assertTrue( cache.getMisses() >= 120 );
+	}
+
+	@Test
+	public void testCacheRejectsOversizedPlanes()
+	{
+		final VirtualStackCache cache = VirtualStackCache.boundedByBytes( 100 );
+		final ImagePlus small = randomImagePlus( 891, new FloatType(), DIMENSIONS );
+		ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapFloat( small ), VirtualStackAdapter.wrapFloat( small, cache ) );
+		final long evictions = cache.getEvictions();
+		// NB: The planes of this image are larger than the whole cache.
+		final ImagePlus large = randomImagePlus( 892, new FloatType(), 10, 10, 3 );
+		ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapFloat( large ), VirtualStackAdapter.wrapFloat( large, cache ) );
+		assertEquals( 4, cache.getResidentPlanes() );
+		assertEquals( 96, cache.getResidentBytes() );
+		assertEquals( evictions, cache.getEvictions() );
+	}
+
+	@Test
+	public void testCacheBoundedByZeroCount()
+	{
+		final ImagePlus image = randomImagePlus( 893, new UnsignedByteType(), DIMENSIONS );
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 0 );
+		ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapByte( image ), VirtualStackAdapter.wrapByte( image, cache ) );
+		assertEquals( 0, cache.getResidentPlanes() );
+		assertEquals( 0, cache.getEvictions() );
+	}
+
+	@Test
+	public void testReadAhead()
+	{
+		final ImagePlus image = randomImagePlus( 901, new UnsignedShortType(), DIMENSIONS );
+		final ExecutorService service = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			final VirtualStackCache cache = VirtualStackCache.boundedByCount( 200 ).setReadAhead( service, 4 );
+			final Img< UnsignedShortType > actual = VirtualStackAdapter.wrapShort( image, cache );
+			ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapShort( image ), actual );
+			assertTrue( cache.getPrefetches() > 0 );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testWrapTiled()
+	{
+		final ImagePlus image = randomImagePlus( 904, new UnsignedShortType(), 5, 7, 4, 3 );
+		final VirtualStackCache planeCache = VirtualStackCache.boundedByCount( 1 );
+		final Img< UnsignedShortType > actual = VirtualStackAdapter.wrapShortTiled( image, 2, 3, planeCache );
+		ImgLib2Assert.assertImageEquals( ImagePlusAdapter.wrapShort( image ), actual );
+		assertEquals( 1, planeCache.getResidentPlanes() );
+	}
+
+	@Test
+	public void testWrapWritable()
+	{
+		final ImageStack stack = copyingStack();
+		final ImagePlus image = new ImagePlus( "test", stack );
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 2 );
+		final Img< UnsignedByteType > img = VirtualStackAdapter.wrapByteWritable( image, cache );
+		img.forEach( pixel -> pixel.set( 42 ) );
+		assertArrayEquals( new byte[] { 42, 42, 42, 42, 42, 42 }, ( byte[] ) stack.getPixels( 1 ) );
+		cache.flush();
+		for ( int i = 1; i <= 4; i++ )
+			assertArrayEquals( new byte[] { 42, 42, 42, 42, 42, 42 }, ( byte[] ) stack.getPixels( i ) );
+	}
+
+	@Test
+	public void testWriteIntoEvictedPlane()
+	{
+		final ImageStack stack = copyingStack();
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 1 );
+		final Img< UnsignedByteType > img = VirtualStackAdapter.wrapByteWritable( new ImagePlus( "test", stack ), cache );
+		final RandomAccess< UnsignedByteType > first = img.randomAccess();
+		first.setPosition( new long[] { 0, 0, 0 } );
+		first.get().set( 1 );
+		final RandomAccess< UnsignedByteType > second = img.randomAccess();
+		second.setPosition( new long[] { 0, 0, 1 } );
+		second.get().set( 2 );
+		// NB: The first plane was evicted, but is still written.
+		first.get().set( 3 );
+		cache.flush();
+		assertEquals( 3, ( ( byte[] ) stack.getPixels( 1 ) )[ 0 ] );
+		assertEquals( 2, ( ( byte[] ) stack.getPixels( 2 ) )[ 0 ] );
+		first.get().set( 4 );
+		final RandomAccess< UnsignedByteType > third = img.randomAccess();
+		third.setPosition( new long[] { 0, 0, 0 } );
+		assertEquals( 4, third.get().get() );
+		cache.flush();
+		assertEquals( 4, ( ( byte[] ) stack.getPixels( 1 ) )[ 0 ] );
+	}
+
+	@Test
+	public void testWriteIntoCollectedPlane() throws InterruptedException
+	{
+		final ImageStack stack = copyingStack();
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 1 );
+		final Img< UnsignedByteType > img = VirtualStackAdapter.wrapByteWritable( new ImagePlus( "test", stack ), cache );
+		RandomAccess< UnsignedByteType > first = img.randomAccess();
+		first.setPosition( new long[] { 0, 0, 0 } );
+		final RandomAccess< UnsignedByteType > second = img.randomAccess();
+		second.setPosition( new long[] { 0, 0, 1 } );
+		second.get().set( 2 );
+		// NB: The first plane was evicted and written back, before it is written.
+		first.get().set( 3 );
+		first = null;
+		for ( int i = 0; i < 100 && ( ( byte[] ) stack.getPixels( 1 ) )[ 0 ] != 3; i++ )
+		{
+			System.gc();
+			Thread.sleep( 10 );
+			cache.flush();
+		}
+		assertEquals( 3, ( ( byte[] ) stack.getPixels( 1 ) )[ 0 ] );
+	}
+
+	@Test
+	public void testFailedWriteBackKeepsPlaneDirty()
+	{
+		final AtomicBoolean fail = new AtomicBoolean( true );
+		final ImageStack stack = new ImageStack( 2, 3 )
+		{
+			@Override
+			public Object getPixels( final int n )
+			{
+				return ( ( byte[] ) super.getPixels( n ) ).clone();
+			}
+
+			@Override
+			public void setPixels( final Object pixels, final int n )
+			{
+				if ( fail.getAndSet( false ) )
+					throw new IllegalStateException();
+				super.setPixels( pixels, n );
+			}
+		};
+		stack.addSlice( "", new byte[ 6 ] );
+		stack.addSlice( "", new byte[ 6 ] );
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 2 );
+		final Img< UnsignedByteType > img = VirtualStackAdapter.wrapByteWritable( new ImagePlus( "test", stack ), cache );
+		img.firstElement().set( 5 );
+		try
+		{
+			cache.flush();
+		}
+		catch ( final IllegalStateException e )
+		{
+			// expected
+		}
+		assertEquals( 0, ( ( byte[] ) stack.getPixels( 1 ) )[ 0 ] );
+		cache.flush();
+		assertEquals( 5, ( ( byte[] ) stack.getPixels( 1 ) )[ 0 ] );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testWrapWritableRequiresBoundedCache()
+	{
+		final ImagePlus image = randomImagePlus( 903, new UnsignedByteType(), DIMENSIONS );
+		VirtualStackAdapter.wrapByteWritable( image, VirtualStackCache.softReferences() );
+	}
+
+	@Test
+	public void testWrapVolatile() throws InterruptedException
+	{
+		final ImagePlus image = randomImagePlus( 902, new UnsignedByteType(), DIMENSIONS );
+		final ExecutorService fetchers = Executors.newSingleThreadExecutor();
+		final VirtualStackCache cache = VirtualStackCache.boundedByCount( 200 );
+		final Img< VolatileUnsignedByteType > actual = VirtualStackAdapter.wrapByteVolatile( image, cache, fetchers );
+		assertFalse( actual.firstElement().isValid() );
+		fetchers.shutdown();
+		assertTrue( fetchers.awaitTermination( 1, TimeUnit.MINUTES ) );
+		final VolatileUnsignedByteType pixel = actual.firstElement();
+		assertTrue( pixel.isValid() );
+		assertEquals( ImagePlusAdapter.wrapByte( image ).firstElement().get(), pixel.get().get() );
+	}
+
+	@Test
+	public void testWritesIntoInvalidPlanesAreDiscarded()
+	{
+		final ImagePlus image = randomImagePlus( 904, new UnsignedByteType(), DIMENSIONS );
+		final ExecutorService fetchers = Executors.newSingleThreadExecutor();
+		// NB: The executor rejects the loads, the planes stay invalid.
+		fetchers.shutdown();
+		final Img< VolatileUnsignedByteType > img = VirtualStackAdapter.wrapByteVolatile( image, VirtualStackCache.boundedByCount( 200 ), fetchers );
+		final RandomAccess< VolatileUnsignedByteType > first = img.randomAccess();
+		first.setPosition( new long[] { 0, 0, 0 } );
+		assertFalse( first.get().isValid() );
+		first.get().get().set( 7 );
+		final RandomAccess< VolatileUnsignedByteType > second = img.randomAccess();
+		second.setPosition( new long[] { 0, 0, 1 } );
+		assertFalse( second.get().isValid() );
+		assertEquals( 0, second.get().get().get() );
+	}
+
+	/**
+	 * Returns a stack of four 2x3 planes, that returns copies of the planes,
+	 * such that changes are only visible after write back.
+	 */
+	private static ImageStack copyingStack()
+	{
+		final ImageStack stack = new ImageStack( 2, 3 )
+		{
+			@Override
+			public Object getPixels( final int n )
+			{
+				return ( ( byte[] ) super.getPixels( n ) ).clone();
+			}
+		};
+		for ( int i = 0; i < 4; i++ )
+			stack.addSlice( "", new byte[ 6 ] );
+		return stack;
+	}
+
 	private < T extends NativeType< T > & NumericType< T > > ImagePlus randomImagePlus( final int seed, final T type, final long... dimensions )
 	{
 		final Img< T > random = RandomImgs.seed(seed).nextImage( type, dimensions );
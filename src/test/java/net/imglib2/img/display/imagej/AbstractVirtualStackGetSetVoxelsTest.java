@@ -70,6 +70,22 @@ public class AbstractVirtualStackGetSetVoxelsTest
 		assertArrayEquals( new float[] { 0xff010203 }, voxels, 0 );
 	}
 
+	@Test
+	public void testGetVoxelsShorts()
+	{
+		final ImageStack stack = TestVirtualStack.shorts( 2, 1, new short[][] { { 42, ( short ) 65535 } } );
+		float[] voxels = stack.getVoxels( 0, 0, 0, 2, 1, 1, null );
+		assertArrayEquals( new float[] { 42, 65535 }, voxels, 0 );
+	}
+
+	@Test
+	public void testGetVoxelsFloats()
+	{
+		final ImageStack stack = TestVirtualStack.floats( 2, 1, new float[][] { { 0.5f, -3 } } );
+		float[] voxels = stack.getVoxels( 0, 0, 0, 2, 1, 1, null );
+		assertArrayEquals( new float[] { 0.5f, -3 }, voxels, 0 );
+	}
+
 	@Test
 	public void testGetVoxels()
 	{
@@ -112,6 +128,15 @@ public class AbstractVirtualStackGetSetVoxelsTest
 		assertEquals( 42, pixels[ 0 ][ 0 ] );
 	}
 
+	@Test
+	public void testSetVoxelsShorts()
+	{
+		short[][] pixels = { { 0, 0 } };
+		ImageStack stack = TestVirtualStack.shorts( 2, 1, pixels );
+		stack.setVoxels( 0, 0, 0, 2, 1, 1, new float[] { 2.6f, 40000 } );
+		assertArrayEquals( new short[] { 3, ( short ) 40000 }, pixels[ 0 ] );
+	}
+
 	@Test
 	public void testSetVoxelsARGB()
 	{
@@ -166,6 +191,16 @@ public class AbstractVirtualStackGetSetVoxelsTest
 			return new TestVirtualStack( width, height, pixels, 8 );
 		}
 
+		public static TestVirtualStack shorts( int width, int height, short[][] pixels )
+		{
+			return new TestVirtualStack( width, height, pixels, 16 );
+		}
+
+		public static TestVirtualStack floats( int width, int height, float[][] pixels )
+		{
+			return new TestVirtualStack( width, height, pixels, 32 );
+		}
+
 		public static TestVirtualStack ints( int width, int height, int[][] pixels )
 		{
 			return new TestVirtualStack( width, height, pixels, 24 );
@@ -36,7 +36,10 @@ package net.imglib2.img.display.imagej;
 import ij.ImageStack;
 import net.imagej.ImgPlus;
 import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
@@ -44,7 +47,9 @@ import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
@@ -52,61 +57,77 @@ import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
+/**
+ * Measures {@link ImageStack#getProcessor(int)} for all planes of an image
+ * wrapped by {@link ImgToVirtualStack}, per pixel type and storage.
+ * <p>
+ * The unconverted types (bytes, shorts, floats and argbs) stored in planar
+ * images or planar cells are returned without copying, 3D array images are
+ * copied with {@link System#arraycopy}. Doubles are converted pixel by pixel,
+ * and serve as reference.
+ */
 @State( Scope.Benchmark )
 public class ImageJVirtualStackGetProcessorBenchmark
 {
 
-	private final ConcurrentMap< Object, Img<?> > cache = new ConcurrentHashMap<>();
-
-	private < T extends NativeType<T> > Img< T > getImage(T type) {
-		return ( Img< T > ) cache.computeIfAbsent( type, ignore -> new ArrayImgFactory<>( type ).create( 200, 200, 200 ) );
-	}
-
-	@Benchmark
-	public void bytes() {
-		test( new UnsignedByteType() );
-	}
+	@Param( { "bytes", "shorts", "floats", "argbs", "doubles" } )
+	private String type;
 
-	@Benchmark
-	public void shorts() {
-		test( new UnsignedShortType() );
-	}
+	@Param( { "array", "planar", "cell" } )
+	private String storage;
 
-	@Benchmark
-	public void floats() {
-		test( new FloatType() );
-	}
+	private ImageStack stack;
 
-	@Benchmark
-	public void doubles() {
-		test( new DoubleType() );
+	@Setup
+	public void setup()
+	{
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		final Img< ? > image = createImage( ( NativeType ) createType() );
+		stack = ImgToVirtualStack.wrap( new ImgPlus<>( image ) ).getStack();
 	}
 
-	@Benchmark
-	public void ints() {
-		test( new DoubleType() );
+	private NativeType< ? > createType()
+	{
+		switch ( type )
+		{
+		case "bytes":
+			return new UnsignedByteType();
+		case "shorts":
+			return new UnsignedShortType();
+		case "floats":
+			return new FloatType();
+		case "argbs":
+			return new ARGBType();
+		case "doubles":
+			return new DoubleType();
+		default:
+			throw new IllegalArgumentException( "unsupported type: " + type );
+		}
 	}
 
-	@Benchmark
-	public void argbs() {
-		test( new ARGBType() );
+	private < T extends NativeType< T > > Img< T > createImage( final T t )
+	{
+		final ImgFactory< T > factory;
+		switch ( storage )
+		{
+		case "array":
+			factory = new ArrayImgFactory<>( t );
+			break;
+		case "planar":
+			factory = new PlanarImgFactory<>( t );
+			break;
+		case "cell":
+			factory = new CellImgFactory<>( t, 200, 200, 1 );
+			break;
+		default:
+			throw new IllegalArgumentException( "unsupported storage: " + storage );
+		}
+		return factory.create( 200, 200, 200 );
 	}
 
 	@Benchmark
-	public void all() {
-		test( new UnsignedByteType() );
-		test( new UnsignedShortType() );
-		test( new FloatType() );
-		test( new ARGBType() );
-	}
-
-	private < T extends NativeType< T > > void test( T type )
+	public void getProcessor()
 	{
-		Img< T > image = getImage( type );
-		ImageStack stack = ImgToVirtualStack.wrap( new ImgPlus<>( image ) ).getStack();
 		for ( int i = 0; i < stack.getSize(); i++ )
 		{
 			stack.getProcessor( i + 1 );
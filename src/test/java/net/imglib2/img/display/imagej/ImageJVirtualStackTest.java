@@ -36,21 +36,44 @@ package net.imglib2.img.display.imagej;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.EventQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgs;
 import net.imglib2.test.RandomImgs;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.Unsigned12BitType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -242,6 +265,337 @@ public class ImageJVirtualStackTest
 		assertEquals( 42, img.firstElement().get() );
 	}
 
+	@Test
+	public void testPlaneCache()
+	{
+		final Img< DoubleType > image = ArrayImgs.doubles( new double[] { 1, 2 }, 1, 1, 2 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( image );
+		final PlaneCache cache = new PlaneCache( 1024 );
+		vs.setPlaneCache( cache );
+		vs.setWritable( true );
+		assertArrayEquals( new float[] { 2 }, ( float[] ) vs.getPixels( 2 ), 0 );
+		assertArrayEquals( new float[] { 2 }, ( float[] ) vs.getPixels( 2 ), 0 );
+		assertEquals( 1, cache.getHits() );
+		assertEquals( 1, cache.getMisses() );
+		vs.setPixels( new float[] { 42 }, 2 );
+		assertArrayEquals( new float[] { 42 }, ( float[] ) vs.getPixels( 2 ), 0 );
+		assertEquals( 42, image.getAt( 0, 0, 1 ).get(), 0 );
+	}
+
+	@Test( timeout = 10000 )
+	public void testSetPixelsWhilePrefetching() throws InterruptedException
+	{
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( new byte[] { 1, 2, 3, 4 }, 1, 1, 4 );
+		// NB: The extended view hides the ArrayImg, such that planes are computed and cached.
+		final ImageJVirtualStack< UnsignedByteType > vs = ImageJVirtualStackUnsignedByte.wrap( Views.interval( Views.extendZero( image ), image ) );
+		final CountDownLatch computed = new CountDownLatch( 1 );
+		final CountDownLatch released = new CountDownLatch( 1 );
+		vs.setPlaneCache( new PlaneCache( 1024 )
+		{
+			@Override
+			public void put( final int index, final Object pixels, final long generation )
+			{
+				// NB: Hold the prefetched third plane, until it was changed.
+				if ( index == 2 )
+				{
+					computed.countDown();
+					try
+					{
+						released.await();
+					}
+					catch ( final InterruptedException e )
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.put( index, pixels, generation );
+			}
+		} );
+		vs.setWritable( true );
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+		vs.setPrefetching( service, 1 );
+		vs.getPixels( 1 );
+		vs.getPixels( 2 );
+		computed.await();
+		vs.setPixels( new byte[] { 42 }, 3 );
+		released.countDown();
+		service.shutdown();
+		assertTrue( service.awaitTermination( 5, TimeUnit.SECONDS ) );
+		assertArrayEquals( new byte[] { 42 }, ( byte[] ) vs.getPixels( 3 ) );
+	}
+
+	@Test
+	public void testPlanarImgPlanesAreNotCopiedIfWritable()
+	{
+		final PlanarImg< UnsignedByteType, ByteArray > image = PlanarImgs.unsignedBytes( 2, 2, 3 );
+		final ImageJVirtualStack< UnsignedByteType > vs = ImageJVirtualStackUnsignedByte.wrap( image );
+		final Object plane = image.getPlane( 1 ).getCurrentStorageArray();
+		assertNotSame( plane, vs.getPixels( 2 ) );
+		vs.setWritable( true );
+		assertSame( plane, vs.getPixels( 2 ) );
+	}
+
+	@Test
+	public void testArrayImgPlanesAreCopiedBehindViews()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 1, 2, 3, 4, 5, 6 }, 2, 1, 3 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( Views.translate( image, 5, 6, 7 ) );
+		vs.setWritable( true );
+		assertArrayEquals( new float[] { 3, 4 }, ( float[] ) vs.getPixels( 2 ), 0 );
+		vs.setPixels( new float[] { 7, 8 }, 3 );
+		assertEquals( 7, image.getAt( 0, 0, 2 ).get(), 0 );
+		assertEquals( 8, image.getAt( 1, 0, 2 ).get(), 0 );
+	}
+
+	@Test
+	public void testSetVoxelsKeepsOtherPixelsOfConvertedImage()
+	{
+		final Img< DoubleType > image = ArrayImgs.doubles( new double[] { 1.25, 0.1 }, 2, 1 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( image );
+		vs.setWritable( true );
+		vs.setVoxels( 0, 0, 0, 1, 1, 1, new float[] { 5 } );
+		assertEquals( 5, image.getAt( 0, 0 ).get(), 0 );
+		assertEquals( 0.1, image.getAt( 1, 0 ).get(), 0 );
+	}
+
+	@Test
+	public void testGetVoxelsInParallel()
+	{
+		final Img< DoubleType > image = RandomImgs.seed( 42 ).nextImage( new DoubleType(), 10, 9, 8 );
+		final ImageJVirtualStack< FloatType > sequential = ImageJVirtualStackFloat.wrap( image );
+		final ImageJVirtualStack< FloatType > parallel = ImageJVirtualStackFloat.wrap( image );
+		final ExecutorService service = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			parallel.setExecutorService( service );
+			assertArrayEquals( sequential.getVoxels( 1, 2, 3, 8, 6, 4, null ), parallel.getVoxels( 1, 2, 3, 8, 6, 4, null ), 0 );
+			assertArrayEquals( sequential.getVoxels( 1, 2, 3, 2, 6, 1, null ), parallel.getVoxels( 1, 2, 3, 2, 6, 1, null ), 0 );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testWriteBack()
+	{
+		final Img< DoubleType > image = ArrayImgs.doubles( new double[] { 1, 2 }, 1, 1, 2 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( image );
+		vs.setWritable( true );
+		vs.setWriteBack( 1024 );
+		vs.setPixels( new float[] { 42 }, 1 );
+		assertEquals( 1, image.getAt( 0, 0, 0 ).get(), 0 );
+		assertTrue( vs.isDirty( 1 ) );
+		assertEquals( 4, vs.getDirtyBytes() );
+		assertArrayEquals( new float[] { 42 }, ( float[] ) vs.getPixels( 1 ), 0 );
+		assertEquals( 0, vs.saveChanges( 1 ) );
+		assertEquals( 42, image.getAt( 0, 0, 0 ).get(), 0 );
+		assertEquals( 0, vs.getDirtyPlaneCount() );
+	}
+
+	@Test
+	public void testWriteBackEvictsLeastRecentlyUsedPlane()
+	{
+		final Img< DoubleType > image = ArrayImgs.doubles( new double[] { 1, 2 }, 1, 1, 2 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( image );
+		vs.setWritable( true );
+		vs.setWriteBack( 4 );
+		vs.setPixels( new float[] { 42 }, 1 );
+		vs.setPixels( new float[] { 43 }, 2 );
+		assertEquals( 42, image.getAt( 0, 0, 0 ).get(), 0 );
+		assertEquals( 2, image.getAt( 0, 0, 1 ).get(), 0 );
+		assertEquals( 1, vs.getDirtyPlaneCount() );
+		vs.flush();
+		assertEquals( 43, image.getAt( 0, 0, 1 ).get(), 0 );
+		assertEquals( 0, vs.getDirtyBytes() );
+	}
+
+	@Test
+	public void testLookupTableConversion()
+	{
+		final Img< ShortType > image = ArrayImgs.shorts( new short[] { -5, 3, 300, 32767, 1, 2, 3, 4 }, 4, 1, 2 );
+		assertArrayEquals( new byte[] { 0, 3, ( byte ) 255, ( byte ) 255 }, ( byte[] ) ImageJVirtualStackUnsignedByte.wrap( image ).getPixels( 1 ) );
+		assertArrayEquals( new short[] { 0, 3, 300, 32767 }, ( short[] ) ImageJVirtualStackUnsignedShort.wrap( image ).getPixels( 1 ) );
+		assertArrayEquals( new byte[] { 1, 2, 3, 4 }, ( byte[] ) ImageJVirtualStackUnsignedByte.wrap( image ).getPixels( 2 ) );
+	}
+
+	@Test
+	public void testLookupTableConversionReusesScratch()
+	{
+		final Img< ByteType > image = ArrayImgs.bytes( new byte[] { -5, 3, 127, 0, 1, 2, 3, -1 }, 4, 1, 2 );
+		final ImageJVirtualStackUnsignedShort vs = ImageJVirtualStackUnsignedShort.wrap( image );
+		assertArrayEquals( new short[] { 0, 3, 127, 0 }, ( short[] ) vs.getPixels( 1 ) );
+		assertArrayEquals( new short[] { 1, 2, 3, 0 }, ( short[] ) vs.getPixels( 2 ) );
+	}
+
+	@Test
+	public void testLookupTableConversionOfPackedType()
+	{
+		final Img< Unsigned12BitType > image = ArrayImgs.unsigned12Bits( 3, 1 );
+		image.getAt( 1, 0 ).setInteger( 300 );
+		image.getAt( 2, 0 ).setInteger( 4095 );
+		assertArrayEquals( new byte[] { 0, ( byte ) 255, ( byte ) 255 }, ( byte[] ) ImageJVirtualStackUnsignedByte.wrap( image ).getPixels( 1 ) );
+		assertArrayEquals( new short[] { 0, 300, 4095 }, ( short[] ) ImageJVirtualStackUnsignedShort.wrap( image ).getPixels( 1 ) );
+	}
+
+	@Test
+	public void testStatisticsCachingIsOptIn()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 1, 5, -2, 3 }, 2, 1, 2 );
+		final ImagePlus imp = ImageJFunctions.wrap( image, "title" );
+		assertFalse( ( ( AbstractVirtualStack ) imp.getStack() ).isStatisticsCaching() );
+	}
+
+	@Test
+	public void testStatisticsCaching()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 1, 5, -2, 3 }, 2, 1, 2 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( image );
+		vs.setWritable( true );
+		vs.setStatisticsCaching( true );
+		vs.getPixels( 1 );
+		final IntensityStatistics plane = vs.getStatistics( 1 );
+		assertSame( plane, vs.getStatistics( 1 ) );
+		// NB: Enabling caching again keeps the cached statistics.
+		vs.setStatisticsCaching( true );
+		assertSame( plane, vs.getStatistics( 1 ) );
+		assertEquals( 1, plane.getMin(), 0 );
+		assertEquals( 5, plane.getMax(), 0 );
+		final IntensityStatistics stack = vs.getStackStatistics();
+		assertEquals( -2, stack.getMin(), 0 );
+		assertEquals( 5, stack.getMax(), 0 );
+		assertEquals( 4, stack.getCount() );
+		vs.setPixels( new float[] { 7, 8 }, 1 );
+		assertEquals( 8, vs.getStatistics( 1 ).getMax(), 0 );
+	}
+
+	@Test
+	public void testBufferPool()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 1, 2, 3, 4, 5, 6 }, 2, 1, 3 );
+		final ImageJVirtualStack< FloatType > vs = ImageJVirtualStackFloat.wrap( image );
+		final PlaneBufferPool pool = new PlaneBufferPool( 2 );
+		vs.setBufferPool( pool );
+		final ImageProcessor first = vs.getProcessor( 1 );
+		final Object pixels = first.getPixels();
+		vs.release( first );
+		final ImageProcessor second = vs.getProcessor( 2 );
+		assertSame( pixels, second.getPixels() );
+		assertArrayEquals( new float[] { 3, 4 }, ( float[] ) second.getPixels(), 0 );
+		assertEquals( 1, pool.getAllocations() );
+		assertEquals( 1, pool.getReuses() );
+		// NB: Arrays, that weren't acquired from the pool, are ignored.
+		assertFalse( pool.release( new float[ 2 ] ) );
+		assertFalse( pool.release( pixels ) );
+	}
+
+	@Test
+	public void testProgressiveLoading() throws InterruptedException
+	{
+		final CountDownLatch released = new CountDownLatch( 1 );
+		final Img< UnsignedByteType > img = new ReadOnlyCachedCellImgFactory().create( new long[] { 4, 2 }, new UnsignedByteType(), cell -> {
+			if ( cell.min( 0 ) > 0 )
+				released.await();
+			final Cursor< UnsignedByteType > cursor = cell.localizingCursor();
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.get().set( 1 + cursor.getIntPosition( 0 ) );
+			}
+		}, ReadOnlyCachedCellImgOptions.options().cellDimensions( 2, 2 ) );
+		// NB: Load the left cell only.
+		img.getAt( 0, 0 );
+		final ImageJVirtualStack< UnsignedByteType > vs = ImageJVirtualStackUnsignedByte.wrap( img );
+		final ExecutorService fetchers = Executors.newSingleThreadExecutor();
+		final BlockingQueue< Integer > completed = new LinkedBlockingQueue<>();
+		assertTrue( vs.setProgressiveLoading( fetchers, completed::add ) );
+		assertArrayEquals( new byte[] { 1, 2, 0, 0, 1, 2, 0, 0 }, ( byte[] ) vs.getProcessor( 1 ).getPixels() );
+		released.countDown();
+		assertEquals( Integer.valueOf( 1 ), completed.poll( 10, TimeUnit.SECONDS ) );
+		assertArrayEquals( new byte[] { 1, 2, 3, 4, 1, 2, 3, 4 }, ( byte[] ) vs.getProcessor( 1 ).getPixels() );
+		fetchers.shutdown();
+	}
+
+	@Test( timeout = 10000 )
+	public void testSetVoxelsWhileCellsAreLoading() throws Exception
+	{
+		final CountDownLatch released = new CountDownLatch( 1 );
+		final Img< UnsignedByteType > img = new ReadOnlyCachedCellImgFactory().create( new long[] { 4, 2 }, new UnsignedByteType(), cell -> {
+			if ( cell.min( 0 ) > 0 )
+				released.await();
+			final Cursor< UnsignedByteType > cursor = cell.localizingCursor();
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.get().set( 1 + cursor.getIntPosition( 0 ) );
+			}
+		}, ReadOnlyCachedCellImgOptions.options().cellDimensions( 2, 2 ) );
+		img.getAt( 0, 0 );
+		final ImageJVirtualStack< UnsignedByteType > vs = ImageJVirtualStackUnsignedByte.wrap( img );
+		final ExecutorService fetchers = Executors.newSingleThreadExecutor();
+		final ExecutorService writer = Executors.newSingleThreadExecutor();
+		try
+		{
+			assertTrue( vs.setProgressiveLoading( fetchers, n -> {} ) );
+			assertArrayEquals( new byte[] { 1, 2, 0, 0, 1, 2, 0, 0 }, ( byte[] ) vs.getProcessor( 1 ).getPixels() );
+			vs.setWritable( true );
+			// NB: A writable stack never returns incomplete planes.
+			assertFalse( vs.setProgressiveLoading( fetchers, n -> {} ) );
+			final Future< ? > write = writer.submit( () -> vs.setVoxels( 0, 0, 0, 1, 1, 1, new float[] { 9 } ) );
+			Thread.sleep( 100 );
+			assertFalse( write.isDone() );
+			released.countDown();
+			write.get();
+			assertArrayEquals( new byte[] { 9, 2, 3, 4, 1, 2, 3, 4 }, ( byte[] ) vs.getPixels( 1 ) );
+		}
+		finally
+		{
+			fetchers.shutdown();
+			writer.shutdown();
+		}
+	}
+
+	@Test( timeout = 10000 )
+	public void testWrapProgressive() throws Exception
+	{
+		final CountDownLatch released = new CountDownLatch( 1 );
+		final Img< UnsignedByteType > img = new ReadOnlyCachedCellImgFactory().create( new long[] { 4, 2 }, new UnsignedByteType(), cell -> {
+			if ( cell.min( 0 ) > 0 )
+				released.await();
+			cell.forEach( pixel -> pixel.set( 1 ) );
+		}, ReadOnlyCachedCellImgOptions.options().cellDimensions( 2, 2 ) );
+		img.getAt( 0, 0 );
+		final ExecutorService fetchers = Executors.newSingleThreadExecutor();
+		// NB: Creating the ImagePlus computes the first plane, it must not wait for the right cell.
+		final ImagePlus imp = ImageJFunctions.wrapProgressive( img, "title", null, fetchers );
+		assertArrayEquals( new byte[] { 1, 1, 0, 0, 1, 1, 0, 0 }, ( byte[] ) imp.getProcessor().getPixels() );
+		released.countDown();
+		fetchers.shutdown();
+		assertTrue( fetchers.awaitTermination( 5, TimeUnit.SECONDS ) );
+		// NB: Wait for the repaint on the event dispatch thread.
+		EventQueue.invokeAndWait( () -> {} );
+		assertArrayEquals( new byte[] { 1, 1, 1, 1, 1, 1, 1, 1 }, ( byte[] ) imp.getProcessor().getPixels() );
+	}
+
+	@Test
+	public void testCellsAreLoadedConcurrently()
+	{
+		final CountDownLatch loading = new CountDownLatch( 4 );
+		final AtomicBoolean concurrent = new AtomicBoolean( true );
+		final Img< UnsignedByteType > img = new ReadOnlyCachedCellImgFactory().create( new long[] { 4, 4 }, new UnsignedByteType(), cell -> {
+			loading.countDown();
+			if ( !loading.await( 5, TimeUnit.SECONDS ) )
+				concurrent.set( false );
+			cell.forEach( pixel -> pixel.set( 1 ) );
+		}, ReadOnlyCachedCellImgOptions.options().cellDimensions( 2, 2 ) );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		final VirtualStack vs = new ImageJVirtualStackUnsignedByte( img, ( i, o ) -> o.set( i ), service );
+		assertArrayEquals( new byte[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, ( byte[] ) vs.getPixels( 1 ) );
+		assertTrue( concurrent.get() );
+		service.shutdown();
+	}
+
 	@Test
 	public void testProcessorPerPlane()
 	{
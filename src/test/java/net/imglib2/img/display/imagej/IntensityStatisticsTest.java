@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import org.junit.Test;
+
+/**
+ * Tests {@link IntensityStatistics}.
+ */
+public class IntensityStatisticsTest
+{
+	@Test
+	public void testMinMax() throws InterruptedException
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 3, Float.NaN, -2, 7, 1, 0 }, 3, 2 );
+		final IntensityStatistics statistics = IntensityStatistics.compute( image, null );
+		assertEquals( -2, statistics.getMin(), 0 );
+		assertEquals( 7, statistics.getMax(), 0 );
+		assertEquals( 5, statistics.getCount() );
+	}
+
+	@Test
+	public void testInfinityIsIgnored() throws InterruptedException
+	{
+		final float[] pixels = { 3, Float.POSITIVE_INFINITY, -2, 7, Float.NEGATIVE_INFINITY, 0 };
+		final IntensityStatistics plane = IntensityStatistics.of( pixels, 10 );
+		assertEquals( -2, plane.getMin(), 0 );
+		assertEquals( 7, plane.getMax(), 0 );
+		assertEquals( 4, plane.getCount() );
+		final IntensityStatistics image = IntensityStatistics.compute( ArrayImgs.floats( pixels, 3, 2 ), null, 10 );
+		assertEquals( -2, image.getMin(), 0 );
+		assertEquals( 7, image.getMax(), 0 );
+		assertEquals( 4, image.getCount() );
+	}
+
+	@Test
+	public void testParallelCellImg() throws InterruptedException
+	{
+		final Img< FloatType > image = RandomImgs.seed( 42 ).nextImage( new FloatType(), 50, 40, 30 );
+		final Img< FloatType > cells = new CellImgFactory<>( new FloatType(), 16, 16, 8 ).create( image );
+		LoopBuilder.setImages( image, cells ).forEachPixel( ( i, o ) -> o.set( i ) );
+		final IntensityStatistics expected = IntensityStatistics.compute( image, null, 100 );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			final IntensityStatistics actual = IntensityStatistics.compute( cells, service, 100 );
+			assertEquals( expected.getMin(), actual.getMin(), 0 );
+			assertEquals( expected.getMax(), actual.getMax(), 0 );
+			assertEquals( 50 * 40 * 30, actual.getCount() );
+			assertArrayEquals( expected.getSaturatedRange( 1 ), actual.getSaturatedRange( 1 ), 0 );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testCellImgWithOneCellAlongLastDimension() throws InterruptedException
+	{
+		final Img< FloatType > image = RandomImgs.seed( 43 ).nextImage( new FloatType(), 50, 40 );
+		final Img< FloatType > cells = new CellImgFactory<>( new FloatType(), 16, 40 ).create( image );
+		LoopBuilder.setImages( image, cells ).forEachPixel( ( i, o ) -> o.set( i ) );
+		final IntensityStatistics expected = IntensityStatistics.compute( image, null, 100 );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			final IntensityStatistics actual = IntensityStatistics.compute( cells, service, 100 );
+			assertEquals( expected.getMin(), actual.getMin(), 0 );
+			assertEquals( expected.getMax(), actual.getMax(), 0 );
+			assertEquals( 50 * 40, actual.getCount() );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testPercentile() throws InterruptedException
+	{
+		final float[] values = new float[ 101 ];
+		for ( int i = 0; i < values.length; i++ )
+			values[ i ] = i;
+		final IntensityStatistics statistics = IntensityStatistics.compute( ArrayImgs.floats( values, 101, 1 ), null, 1000 );
+		assertEquals( 50, statistics.getPercentile( 50 ), 0.1 );
+		assertEquals( 0, statistics.getPercentile( 0 ), 0.1 );
+		assertEquals( 100, statistics.getPercentile( 100 ), 0.1 );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testPercentileRequiresHistogram() throws InterruptedException
+	{
+		IntensityStatistics.compute( ArrayImgs.floats( 2, 2 ), null ).getPercentile( 50 );
+	}
+
+	@Test
+	public void testEstimateIsExactForSmallImages()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( new float[] { 3, Float.NaN, -2, 7, 1, 0 }, 3, 2 );
+		final IntensityStatistics estimate = IntensityStatistics.estimate( image, 100, 10 );
+		assertEquals( -2, estimate.getMin(), 0 );
+		assertEquals( 7, estimate.getMax(), 0 );
+		assertEquals( 5, estimate.getCount() );
+	}
+
+	@Test
+	public void testEstimateOfCellImg() throws InterruptedException
+	{
+		final Img< FloatType > image = RandomImgs.seed( 42 ).nextImage( new FloatType(), 100, 100, 50 );
+		final Img< FloatType > cells = new CellImgFactory<>( new FloatType(), 16, 16, 8 ).create( image );
+		LoopBuilder.setImages( image, cells ).forEachPixel( ( i, o ) -> o.set( i ) );
+		final IntensityStatistics exact = IntensityStatistics.compute( image, null, 100 );
+		final IntensityStatistics estimate = IntensityStatistics.estimate( cells, 10000, 100 );
+		assertTrue( estimate.getCount() <= 10000 );
+		assertTrue( estimate.getCount() > 5000 );
+		assertTrue( estimate.getMin() >= exact.getMin() );
+		assertTrue( estimate.getMax() <= exact.getMax() );
+		assertEquals( exact.getPercentile( 50 ), estimate.getPercentile( 50 ), 0.05 * ( exact.getMax() - exact.getMin() ) );
+	}
+
+	@Test
+	public void testInterrupt()
+	{
+		Thread.currentThread().interrupt();
+		try
+		{
+			IntensityStatistics.compute( ArrayImgs.floats( 300, 300 ), null );
+		}
+		catch ( final InterruptedException e )
+		{
+			assertTrue( !Thread.currentThread().isInterrupted() );
+			return;
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+		throw new AssertionError( "InterruptedException expected." );
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PlaneCache}.
+ */
+public class PlaneCacheTest
+{
+	@Test
+	public void testHitsAndMisses()
+	{
+		final PlaneCache cache = new PlaneCache( 100 );
+		assertNull( cache.get( 0 ) );
+		cache.put( 0, new byte[] { 1, 2, 3 } );
+		assertArrayEquals( new byte[] { 1, 2, 3 }, ( byte[] ) cache.get( 0 ) );
+		assertEquals( 1, cache.getHits() );
+		assertEquals( 1, cache.getMisses() );
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted()
+	{
+		final PlaneCache cache = new PlaneCache( 24 );
+		cache.put( 0, new float[ 3 ] );
+		cache.put( 1, new float[ 3 ] );
+		cache.get( 0 );
+		cache.put( 2, new float[ 3 ] );
+		assertEquals( 2, cache.size() );
+		assertEquals( 24, cache.getSizeInBytes() );
+		assertNull( cache.get( 1 ) );
+	}
+
+	@Test
+	public void testPlaneLargerThanBudgetIsNotCached()
+	{
+		final PlaneCache cache = new PlaneCache( 10 );
+		cache.put( 0, new short[ 6 ] );
+		assertEquals( 0, cache.size() );
+		assertEquals( 0, cache.getSizeInBytes() );
+	}
+
+	@Test
+	public void testInvalidate()
+	{
+		final PlaneCache cache = new PlaneCache( 100 );
+		cache.put( 0, new int[ 2 ] );
+		cache.put( 1, new int[ 2 ] );
+		cache.invalidate( 0 );
+		assertNull( cache.get( 0 ) );
+		assertEquals( 8, cache.getSizeInBytes() );
+		cache.invalidateAll();
+		assertEquals( 0, cache.size() );
+	}
+
+	@Test
+	public void testStalePlaneIsDropped()
+	{
+		final PlaneCache cache = new PlaneCache( 100 );
+		final long generation = cache.getGeneration( 0 );
+		cache.invalidate( 0 );
+		cache.put( 0, new int[ 2 ], generation );
+		assertNull( cache.get( 0 ) );
+		cache.put( 0, new int[ 2 ], cache.getGeneration( 0 ) );
+		assertEquals( 1, cache.size() );
+		final long beforeInvalidateAll = cache.getGeneration( 1 );
+		cache.invalidateAll();
+		cache.put( 1, new int[ 2 ], beforeInvalidateAll );
+		assertEquals( 0, cache.size() );
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests {@link PlanePrefetcher}.
+ */
+public class PlanePrefetcherTest
+{
+	private final ExecutorService service = Executors.newSingleThreadExecutor();
+
+	private final Map< Integer, AtomicInteger > loads = new ConcurrentHashMap<>();
+
+	private final IntFunction< Object > loader = index -> {
+		loads.computeIfAbsent( index, k -> new AtomicInteger() ).incrementAndGet();
+		return new byte[] { ( byte ) index };
+	};
+
+	@After
+	public void after()
+	{
+		service.shutdownNow();
+	}
+
+	@Test
+	public void testForwardNavigation() throws InterruptedException
+	{
+		final PlanePrefetcher prefetcher = new PlanePrefetcher( loader, service, 2 );
+		for ( int i = 0; i < 4; i++ )
+			assertArrayEquals( new byte[] { ( byte ) i }, ( byte[] ) prefetcher.getPixels( i, 0, 10, new int[] { 1 } ) );
+		awaitTasks();
+		for ( int i = 0; i < 6; i++ )
+			assertEquals( 1, loads.get( i ).get() );
+		assertEquals( 6, loads.size() );
+	}
+
+	@Test
+	public void testStrideNavigation() throws InterruptedException
+	{
+		final PlanePrefetcher prefetcher = new PlanePrefetcher( loader, service, 1 );
+		prefetcher.getPixels( 2, 0, 12, new int[] { 1, 4 } );
+		prefetcher.getPixels( 6, 0, 12, new int[] { 1, 4 } );
+		awaitTasks();
+		assertEquals( 1, loads.get( 10 ).get() );
+		assertArrayEquals( new byte[] { 10 }, ( byte[] ) prefetcher.getPixels( 10, 0, 12, new int[] { 1, 4 } ) );
+		assertEquals( 1, loads.get( 10 ).get() );
+	}
+
+	@Test
+	public void testInvalidate() throws InterruptedException
+	{
+		final PlanePrefetcher prefetcher = new PlanePrefetcher( loader, service, 1 );
+		prefetcher.getPixels( 0, 0, 3, new int[] { 1 } );
+		prefetcher.getPixels( 1, 0, 3, new int[] { 1 } );
+		awaitTasks();
+		prefetcher.invalidate( 2 );
+		prefetcher.getPixels( 2, 0, 3, new int[] { 1 } );
+		assertEquals( 2, loads.get( 2 ).get() );
+	}
+
+	private void awaitTasks() throws InterruptedException
+	{
+		service.shutdown();
+		service.awaitTermination( 10, TimeUnit.SECONDS );
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2024 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.img.display.imagej;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeFalse;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+
+/**
+ * Tests {@link VirtualStackPyramid}.
+ */
+public class VirtualStackPyramidTest
+{
+	private final float[] pixels = {
+			1, 3, 5, 7, 9,
+			1, 3, 5, 7, 9,
+			2, 2, 2, 2, 2,
+			4, 4, 4, 4, 4 };
+
+	private final VirtualStackPyramid< FloatType > pyramid = new VirtualStackPyramid<>( ArrayImgs.floats( pixels, 5, 4 ), 2 );
+
+	@Test
+	public void testLevels()
+	{
+		assertEquals( 3, pyramid.numLevels() );
+		assertArrayEquals( new long[] { 3, 2 }, Intervals.dimensionsAsLongArray( pyramid.getLevel( 1 ) ) );
+		assertArrayEquals( new long[] { 2, 1 }, Intervals.dimensionsAsLongArray( pyramid.getLevel( 2 ) ) );
+	}
+
+	@Test
+	public void testAverages()
+	{
+		final RandomAccessibleInterval< FloatType > level = pyramid.getLevel( 1 );
+		assertEquals( 2, level.getAt( 0, 0 ).get(), 0 );
+		assertEquals( 6, level.getAt( 1, 0 ).get(), 0 );
+		// NB: The border pixels are repeated.
+		assertEquals( 9, level.getAt( 2, 0 ).get(), 0 );
+		assertEquals( 3, level.getAt( 1, 1 ).get(), 0 );
+	}
+
+	@Test
+	public void testLevelFor()
+	{
+		assertEquals( 0, pyramid.levelFor( 1 ) );
+		assertEquals( 0, pyramid.levelFor( 0.75 ) );
+		assertEquals( 1, pyramid.levelFor( 0.5 ) );
+		assertEquals( 2, pyramid.levelFor( 0.03 ) );
+	}
+
+	@Test
+	public void testSetLevel()
+	{
+		final ImagePlus imp = pyramid.wrap( 0, "title" );
+		imp.getCalibration().pixelWidth = 0.5;
+		pyramid.setLevel( imp, 1 );
+		assertEquals( 3, imp.getWidth() );
+		assertEquals( 2, imp.getHeight() );
+		assertEquals( 1, imp.getCalibration().pixelWidth, 0 );
+		assertEquals( 6, imp.getProcessor().getf( 1, 0 ), 0 );
+	}
+
+	@Test
+	public void testSetLevelScalesCanvas()
+	{
+		assumeFalse( GraphicsEnvironment.isHeadless() );
+		final ImagePlus imp = pyramid.wrap( 0, "title" );
+		imp.show();
+		try
+		{
+			imp.getCanvas().setMagnification( 4 );
+			imp.getCanvas().setSourceRect( new Rectangle( 2, 2, 2, 2 ) );
+			pyramid.setLevel( imp, 1 );
+			assertEquals( 8, imp.getCanvas().getMagnification(), 0 );
+			assertEquals( new Rectangle( 1, 1, 1, 1 ), imp.getCanvas().getSrcRect() );
+		}
+		finally
+		{
+			imp.close();
+		}
+	}
+
+	@Test
+	public void testScaleRectangle()
+	{
+		assertEquals( new Rectangle( 1, 2, 4, 3 ), VirtualStackPyramid.scaleRectangle( new Rectangle( 3, 5, 6, 5 ), 0.5, 100, 100 ) );
+		assertEquals( new Rectangle( 6, 10, 12, 10 ), VirtualStackPyramid.scaleRectangle( new Rectangle( 3, 5, 6, 5 ), 2, 100, 100 ) );
+		assertEquals( new Rectangle( 6, 10, 4, 2 ), VirtualStackPyramid.scaleRectangle( new Rectangle( 3, 5, 6, 5 ), 2, 10, 12 ) );
+	}
+}
@@ -34,15 +34,33 @@
 
 package net.imglib2.img.imageplus;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.display.projector.PrimitiveRowCopy;
+import net.imglib2.exception.ImgLibException;
+import net.imglib2.img.ImagePlusAdapter;
+import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.ImgTestHelper;
 import net.imglib2.util.Util;
 
 import org.junit.Test;
 
+import ij.ImagePlus;
+import ij.VirtualStack;
+
 /**
  * Unit tests for {@link ImagePlusImg}.
  *
@@ -69,4 +87,82 @@ public class ImagePlusImgTest
 			}
 		}
 	}
+
+	@Test
+	public void testLazyImagePlusImg()
+	{
+		final long[][] dim = ImgTestHelper.dims();
+		for ( int i = 0; i < dim.length; ++i )
+			if ( dim[ i ].length < 6 )
+				assertTrue( "ArrayImg vs lazy ImagePlusImg failed for dim = " + Util.printCoordinates( dim[ i ] ),
+						ImgTestHelper.testImg( dim[ i ], new ArrayImgFactory<>( new FloatType() ), new ImagePlusImgFactory<>( new FloatType(), true ) ) );
+	}
+
+	@Test
+	public void testLazyImagePlus() throws ImgLibException
+	{
+		final ImagePlusImg< UnsignedByteType, ? > img = new ImagePlusImgFactory<>( new UnsignedByteType(), true ).create( 4, 3, 5 );
+		final RandomAccess< UnsignedByteType > ra = img.randomAccess();
+		ra.setPosition( new long[] { 1, 2, 3 } );
+		ra.get().set( 42 );
+		ra.setPosition( 2, 2 );
+		assertEquals( 0, ra.get().get() );
+		final ImagePlus imp = img.getImagePlus();
+		assertEquals( 5, imp.getStackSize() );
+		assertEquals( 42, ( ( byte[] ) imp.getStack().getPixels( 4 ) )[ 9 ] );
+		ra.get().set( 7 );
+		assertEquals( 7, ( ( byte[] ) imp.getStack().getPixels( 3 ) )[ 9 ] );
+	}
+
+	@Test
+	public void testCopyingDoesNotAllocateLazyPlanes()
+	{
+		final ImagePlusImg< UnsignedByteType, ? > img = new ImagePlusImgFactory<>( new UnsignedByteType(), true ).create( 4, 3, 5 );
+		final Img< UnsignedByteType > target = ArrayImgs.unsignedBytes( 4, 3 );
+		assertTrue( PrimitiveRowCopy.copy( img, new long[] { 0, 0, 2 }, 0, 1, target ) );
+		// NB: Unallocated planes share the zero array.
+		assertSame( ReadOnlyArrays.get( img.getPlane( 1 ) ), ReadOnlyArrays.get( img.getPlane( 2 ) ) );
+		img.getPlane( 2 ).getCurrentStorageArray();
+		assertNotSame( ReadOnlyArrays.get( img.getPlane( 1 ) ), ReadOnlyArrays.get( img.getPlane( 2 ) ) );
+	}
+
+	@Test
+	public void testWrapVirtualStack()
+	{
+		final VirtualStack stack = new VirtualStack( 4, 3, 3 )
+		{
+			@Override
+			public Object getPixels( final int n )
+			{
+				final byte[] pixels = new byte[ 12 ];
+				Arrays.fill( pixels, ( byte ) n );
+				return pixels;
+			}
+		};
+		final ByteImagePlus< UnsignedByteType > img = ImagePlusAdapter.wrapByte( new ImagePlus( "virtual", stack ) );
+		assertEquals( 2, img.getPlane( 1 ).getValue( 5 ) );
+		final ByteArray plane = new ByteArray( 12 );
+		img.setPlane( 1, plane );
+		assertSame( plane, img.getPlane( 1 ) );
+		assertEquals( 3, img.getPlane( 2 ).getValue( 0 ) );
+	}
+
+	@Test
+	public void testSetPlaneTransfersOwnership() throws ImgLibException
+	{
+		final ShortImagePlus< UnsignedShortType > img = ImagePlusImgs.unsignedShorts( 4, 3, 5 );
+		final ImagePlus imp = img.getImagePlus();
+		for ( int i = 0; i < 5; i++ )
+		{
+			final short[] pixels = new short[ 12 ];
+			pixels[ 5 ] = ( short ) ( i + 1 );
+			img.setPlane( i, new ShortArray( pixels ) );
+			assertSame( pixels, img.getPlane( i ).getCurrentStorageArray() );
+			assertSame( pixels, imp.getStack().getPixels( i + 1 ) );
+		}
+		assertSame( img.getPlane( 0 ).getCurrentStorageArray(), imp.getProcessor().getPixels() );
+		final RandomAccess< UnsignedShortType > ra = img.randomAccess();
+		ra.setPosition( new long[] { 1, 1, 4 } );
+		assertEquals( 5, ra.get().get() );
+	}
 }